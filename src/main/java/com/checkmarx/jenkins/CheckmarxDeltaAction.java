@@ -0,0 +1,64 @@
+package com.checkmarx.jenkins;
+
+import com.checkmarx.jenkins.model.FindingsDelta;
+import hudson.model.Action;
+import hudson.model.Run;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.Objects;
+
+/**
+ * Shows the findings a build introduced and fixed compared to its baseline build on the build page.
+ */
+public class CheckmarxDeltaAction implements Action {
+
+    private final FindingsDelta delta;
+    private final String label;
+
+    public CheckmarxDeltaAction(@Nonnull final FindingsDelta delta) {
+        this(delta, null);
+    }
+
+    public CheckmarxDeltaAction(@Nonnull final FindingsDelta delta, @CheckForNull final String label) {
+        this.delta = delta;
+        this.label = label;
+    }
+
+    @CheckForNull
+    public static CheckmarxDeltaAction find(@Nonnull final Run<?, ?> run, @CheckForNull final String label) {
+        for (CheckmarxDeltaAction action : run.getActions(CheckmarxDeltaAction.class)) {
+            if (Objects.equals(action.getLabel(), label)) {
+                return action;
+            }
+        }
+        return null;
+    }
+
+    public FindingsDelta getDelta() {
+        return delta;
+    }
+
+    /**
+     * @return the names of the parallel branches that ran the scan, {@code null} outside of parallel branches
+     */
+    @CheckForNull
+    public String getLabel() {
+        return label;
+    }
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Checkmarx Findings Delta";
+    }
+
+    @Override
+    public String getUrlName() {
+        return null;
+    }
+}
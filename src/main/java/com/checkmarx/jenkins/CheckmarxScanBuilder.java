@@ -1,51 +1,53 @@
 package com.checkmarx.jenkins;
 
-import com.checkmarx.ast.scans.CxAuth;
-import com.checkmarx.ast.scans.CxScan;
-import com.checkmarx.ast.scans.CxScanConfig;
 import com.checkmarx.jenkins.credentials.CheckmarxApiToken;
+import com.checkmarx.jenkins.credentials.CredentialsLookupCache;
+import com.checkmarx.jenkins.exception.CheckmarxException;
 import com.checkmarx.jenkins.model.ScanConfig;
 import com.checkmarx.jenkins.tools.CheckmarxInstallation;
+import com.checkmarx.jenkins.tools.NodeInstallationCache;
 import com.cloudbees.plugins.credentials.CredentialsMatchers;
 import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
 import com.cloudbees.plugins.credentials.common.StandardListBoxModel;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import hudson.*;
 import hudson.model.*;
-import hudson.security.ACL;
-import hudson.tasks.ArtifactArchiver;
+import hudson.model.listeners.SaveableListener;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.Builder;
 import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
+import hudson.util.StreamTaskListener;
 import jenkins.model.Jenkins;
 import jenkins.tasks.SimpleBuildStep;
 import lombok.NonNull;
 import lombok.SneakyThrows;
 import net.sf.json.JSONObject;
 import org.apache.commons.lang.StringUtils;
-import org.jenkinsci.Symbol;
 import org.kohsuke.stapler.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.io.File;
-import java.util.Arrays;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Callable;
 
-import static com.cloudbees.plugins.credentials.CredentialsMatchers.anyOf;
 import static com.cloudbees.plugins.credentials.CredentialsMatchers.withId;
 import static com.cloudbees.plugins.credentials.CredentialsProvider.findCredentialById;
-import static com.cloudbees.plugins.credentials.CredentialsProvider.lookupCredentials;
 import static hudson.Util.fixEmptyAndTrim;
-import static java.util.stream.Collectors.joining;
 
 public class CheckmarxScanBuilder extends Builder implements SimpleBuildStep {
 
     public static final String GIT_BRANCH = "GIT_BRANCH";
+    public static final String GIT_COMMIT = "GIT_COMMIT";
     public static final String CVS_BRANCH = "CVS_BRANCH";
     public static final String SVN_REVISION = "SVN_REVISION";
 
@@ -61,6 +63,10 @@ public class CheckmarxScanBuilder extends Builder implements SimpleBuildStep {
     private String additionalOptions;
     private boolean useOwnAdditionalOptions;
     private boolean useOwnServerCredentials;
+    private String reportFormats;
+    private boolean removeReportFromWorkspace;
+    private boolean deduplicateScans;
+    private boolean useCachedResults;
 
     @DataBoundConstructor
     public CheckmarxScanBuilder(boolean useOwnServerCredentials,
@@ -160,6 +166,42 @@ public class CheckmarxScanBuilder extends Builder implements SimpleBuildStep {
         this.checkmarxInstallation = checkmarxInstallation;
     }
 
+    public String getReportFormats() {
+        return reportFormats;
+    }
+
+    @DataBoundSetter
+    public void setReportFormats(@Nullable String reportFormats) {
+        this.reportFormats = fixEmptyAndTrim(reportFormats);
+    }
+
+    public boolean getRemoveReportFromWorkspace() {
+        return removeReportFromWorkspace;
+    }
+
+    @DataBoundSetter
+    public void setRemoveReportFromWorkspace(boolean removeReportFromWorkspace) {
+        this.removeReportFromWorkspace = removeReportFromWorkspace;
+    }
+
+    public boolean getDeduplicateScans() {
+        return deduplicateScans;
+    }
+
+    @DataBoundSetter
+    public void setDeduplicateScans(boolean deduplicateScans) {
+        this.deduplicateScans = deduplicateScans;
+    }
+
+    public boolean getUseCachedResults() {
+        return useCachedResults;
+    }
+
+    @DataBoundSetter
+    public void setUseCachedResults(boolean useCachedResults) {
+        this.useCachedResults = useCachedResults;
+    }
+
     public boolean isUseAuthenticationUrl() {
         return useAuthenticationUrl;
     }
@@ -178,9 +220,23 @@ public class CheckmarxScanBuilder extends Builder implements SimpleBuildStep {
         this.baseAuthUrl = baseAuthUrl;
     }
 
-    @SneakyThrows
     @Override
+    @SneakyThrows
     public void perform(@Nonnull Run<?, ?> run, @Nonnull FilePath workspace, EnvVars envVars, @Nonnull Launcher launcher, @Nonnull TaskListener listener) {
+        try {
+            perform(run, workspace, envVars, launcher, listener, null);
+        } catch (AbortException e) {
+            // the following build steps still run, as they did before the pipeline step reported failures
+            log.error(e.getMessage());
+            run.setResult(Result.FAILURE);
+        }
+    }
+
+    /**
+     * @param label names of the parallel branches running the scan, {@code null} outside of parallel branches
+     * @throws AbortException when the scan could not run or its results could not be fetched
+     */
+    void perform(@Nonnull Run<?, ?> run, @Nonnull FilePath workspace, EnvVars envVars, @Nonnull Launcher launcher, @Nonnull TaskListener listener, @Nullable String label) throws Exception {
         final CheckmarxScanBuilderDescriptor descriptor = getDescriptor();
         log = new CxLoggerAdapter(listener.getLogger());
 
@@ -188,9 +244,7 @@ public class CheckmarxScanBuilder extends Builder implements SimpleBuildStep {
         try {
             scanConfig = resolveConfiguration(run, workspace, descriptor, envVars, log);
         } catch (Exception e) {
-            log.info(e.getMessage());
-            run.setResult(Result.FAILURE);
-            return;
+            throw new AbortException(e.getMessage());
         }
 
         printConfiguration(scanConfig, log);
@@ -199,18 +253,14 @@ public class CheckmarxScanBuilder extends Builder implements SimpleBuildStep {
         //// Check for required version of CLI
         CheckmarxInstallation installation = PluginUtils.findCheckmarxInstallation(checkmarxInstallation);
         if (installation == null) {
-            log.info("Checkmarx installation named '" + checkmarxInstallation + "' was not found. Please configure the build properly and retry.");
-            run.setResult(Result.FAILURE);
-            return;
+            throw new AbortException("Checkmarx installation named '" + checkmarxInstallation + "' was not found. Please configure the build properly and retry.");
         }
 
         // install if necessary
         Computer computer = workspace.toComputer();
         Node node = computer != null ? computer.getNode() : null;
         if (node == null) {
-            log.info("Not running on a build node.");
-            run.setResult(Result.FAILURE);
-            return;
+            throw new AbortException("Not running on a build node.");
         }
 
         installation = installation.forNode(node, listener);
@@ -218,36 +268,58 @@ public class CheckmarxScanBuilder extends Builder implements SimpleBuildStep {
         String checkmarxCliExecutable = installation.getCheckmarxExecutable(launcher);
 
         if (checkmarxCliExecutable == null) {
-            log.info("Can't retrieve the Checkmarx executable.");
-            run.setResult(Result.FAILURE);
-            return;
+            throw new AbortException("Can't retrieve the Checkmarx executable.");
         }
         log.info("This is the executable: " + checkmarxCliExecutable);
 
         // Check if the configured token is valid.
         CheckmarxApiToken checkmarxToken = scanConfig.getCheckmarxToken();
         if (checkmarxToken == null) {
-            log.error("Checkmarx API token with ID '" + credentialsId + "' was not found. Please configure the build properly and retry.");
-            run.setResult(Result.FAILURE);
-            return;
+            throw new AbortException("Checkmarx API token with ID '" + credentialsId + "' was not found. Please configure the build properly and retry.");
         }
 
-        if (run.getActions(CheckmarxScanResultsAction.class).isEmpty()) {
-            run.addAction(new CheckmarxScanResultsAction(run));
+        CheckmarxScanResultsAction resultsAction = CheckmarxScanResultsAction.find(run, label);
+        if (resultsAction == null) {
+            resultsAction = new CheckmarxScanResultsAction(run, label);
+            run.addAction(resultsAction);
         }
+        final String resultsName = PluginUtils.getResultsName(workspace, label);
 
-        //----------Integration with the wrapper------------
-        final CxScan resultObject = PluginUtils.submitScanDetailsToWrapper(scanConfig, checkmarxCliExecutable, this.log);
-        if (resultObject != null) {
-            PluginUtils.generateHTMLReport(workspace, resultObject.getID(), scanConfig, checkmarxCliExecutable, log);
-
-            ArtifactArchiver artifactArchiver = new ArtifactArchiver(workspace.getName() + "_" + PluginUtils.CHECKMARX_AST_RESULTS_HTML);
-            artifactArchiver.perform(run, workspace, envVars, launcher, listener);
+        // the build environment, with withEnv, proxy settings and tool paths, plus the credentials of the CLI
+        final Map<String, String> cliEnvironment = new EnvVars(envVars).overrideAll(PluginUtils.getAuthenticationEnvironment(scanConfig, checkmarxToken));
 
-            run.setResult(Result.SUCCESS);
+        final Callable<String> scan = () -> PluginUtils.submitScan(workspace, launcher, listener, scanConfig, cliEnvironment, checkmarxCliExecutable, this.log);
+        final String commit = getCommit(envVars);
+        final String cacheKey = getUseCachedResults() && commit != null ? PluginUtils.getResultCacheKey(scanConfig, commit) : null;
+        String scanId = cacheKey != null ? ScanResultCache.get().lookup(cacheKey) : null;
+        final boolean cached = scanId != null;
+        if (cached) {
+            log.info("Reusing the results of scan " + scanId + " of commit " + commit + ".");
         } else {
-            run.setResult(Result.FAILURE);
+            scanId = getDeduplicateScans()
+                    ? InFlightScans.submitOrJoin(PluginUtils.getScanKey(scanConfig, commit != null ? commit : PluginUtils.fingerprintSources(workspace)), this.log, scan)
+                    : scan.call();
+            if (scanId != null && cacheKey != null) {
+                ScanResultCache.get().store(cacheKey, scanId);
+            }
+        }
+        if (scanId == null) {
+            throw new AbortException("The scan did not complete.");
         }
+        resultsAction.setScanId(scanId);
+        try {
+            PluginUtils.generateReports(workspace, launcher, listener, scanId, scanConfig, cliEnvironment, checkmarxCliExecutable, resultsName);
+        } catch (IOException e) {
+            if (cached) {
+                // the scan may have been deleted from the server since, let the next build scan again
+                ScanResultCache.get().remove(cacheKey);
+            }
+            throw e;
+        }
+        PluginUtils.ingestResults(run, workspace, envVars, resultsAction, resultsName, this.log);
+
+        final String reportPath = PluginUtils.archiveReport(run, workspace, launcher, listener, resultsName, getRemoveReportFromWorkspace());
+        resultsAction.setReportPath(reportPath);
     }
 
     private String getDefaultBranchName(EnvVars envVars) {
@@ -258,6 +330,13 @@ public class CheckmarxScanBuilder extends Builder implements SimpleBuildStep {
         return "";
     }
 
+    private String getCommit(EnvVars envVars) {
+        if (!StringUtils.isEmpty(envVars.get(GIT_COMMIT))) return envVars.get(GIT_COMMIT);
+        if (!StringUtils.isEmpty(envVars.get(SVN_REVISION))) return envVars.get(SVN_REVISION);
+
+        return null;
+    }
+
     private void printConfiguration(ScanConfig scanConfig, CxLoggerAdapter log) {
         log.info("----**** Checkmarx Scan Configuration ****----");
         log.info("Checkmarx Server Url: " + scanConfig.getServerUrl());
@@ -271,6 +350,7 @@ public class CheckmarxScanBuilder extends Builder implements SimpleBuildStep {
 
         log.info("Using global additional options: " + !getUseOwnAdditionalOptions());
         log.info("Additional Options: " + Optional.ofNullable(scanConfig.getAdditionalOptions()).orElse(""));
+        log.info("Report Formats: " + String.join(", ", scanConfig.getReportFormats()));
 
     }
 
@@ -317,9 +397,10 @@ public class CheckmarxScanBuilder extends Builder implements SimpleBuildStep {
             scanConfig.setAdditionalOptions(additionalOptions);
         }
 
-        File file = new File(workspace.getRemote());
-        String sourceDir = file.getAbsolutePath();
-        scanConfig.setSourceDirectory(sourceDir);
+        scanConfig.setReportFormats(PluginUtils.parseReportFormats(getReportFormats()));
+
+        // the path on the node running the scan, which the controller must not resolve against its own file system
+        scanConfig.setSourceDirectory(workspace.getRemote());
 
         return scanConfig;
     }
@@ -333,12 +414,10 @@ public class CheckmarxScanBuilder extends Builder implements SimpleBuildStep {
         return (CheckmarxScanBuilderDescriptor) super.getDescriptor();
     }
 
-    @Symbol("checkmarxASTScanner")
     @Extension
     public static class CheckmarxScanBuilderDescriptor extends BuildStepDescriptor<Builder> {
 
         private static final Logger LOG = LoggerFactory.getLogger(CheckmarxScanBuilderDescriptor.class.getName());
-        private static final int authValid = 0;
 
         @Nullable
         private String serverUrl;
@@ -353,10 +432,22 @@ public class CheckmarxScanBuilder extends Builder implements SimpleBuildStep {
         @CopyOnWrite
         private volatile CheckmarxInstallation[] installations = new CheckmarxInstallation[0];
 
+        private transient volatile Map<String, CheckmarxInstallation> installationsByName = Collections.emptyMap();
+
+        private final transient ConnectionTests connectionTests = new ConnectionTests();
+
+        private final transient CredentialsLookupCache credentialsLookupCache = new CredentialsLookupCache();
+
         public CheckmarxScanBuilderDescriptor() {
             load();
         }
 
+        @Override
+        public synchronized void load() {
+            super.load();
+            this.installationsByName = indexByName(this.installations);
+        }
+
         @NonNull
         @Override
         public String getDisplayName() {
@@ -375,9 +466,24 @@ public class CheckmarxScanBuilder extends Builder implements SimpleBuildStep {
 
         public void setInstallations(final CheckmarxInstallation... installations) {
             this.installations = installations;
+            this.installationsByName = indexByName(installations);
+            NodeInstallationCache.invalidateAll();
             this.save();
         }
 
+        @Nullable
+        public CheckmarxInstallation getInstallation(@Nullable final String name) {
+            return name == null ? null : this.installationsByName.get(name);
+        }
+
+        private static Map<String, CheckmarxInstallation> indexByName(final CheckmarxInstallation[] installations) {
+            final Map<String, CheckmarxInstallation> index = new HashMap<>();
+            for (CheckmarxInstallation installation : installations) {
+                index.putIfAbsent(installation.getName(), installation);
+            }
+            return Collections.unmodifiableMap(index);
+        }
+
         @Nullable
         public String getServerUrl() {
             return serverUrl;
@@ -445,10 +551,7 @@ public class CheckmarxScanBuilder extends Builder implements SimpleBuildStep {
         }
 
         public boolean hasInstallationsAvailable() {
-            if (LOG.isTraceEnabled()) {
-                LOG.trace("Available Checkmarx installations: {}",
-                        Arrays.stream(this.installations).map(CheckmarxInstallation::getName).collect(joining(",", "[", "]")));
-            }
+            LOG.trace("Available Checkmarx installations: {}", this.installationsByName.keySet());
 
             return this.installations.length > 0;
         }
@@ -475,53 +578,88 @@ public class CheckmarxScanBuilder extends Builder implements SimpleBuildStep {
                     job.checkPermission(Item.CONFIGURE);
                 }
 
-                String cxInstallationPath = getCheckmarxInstallationPath(checkmarxInstallation);
-                CheckmarxApiToken checkmarxApiToken = getCheckmarxApiToken(credentialsId);
-
-                CxScanConfig config = new CxScanConfig();
-                config.setBaseUri(serverUrl);
-                config.setTenant(tenantName);
-                config.setClientId(checkmarxApiToken.getClientId());
-                config.setClientSecret(checkmarxApiToken.getToken().getPlainText());
-                config.setPathToExecutable(cxInstallationPath);
+                if (StringUtils.isEmpty(serverUrl)) throw new Exception("Server Url cannot be empty");
+                final String authUrl = useAuthenticationUrl ? baseAuthUrl : null;
+                final String key = getConnectionTestKey(serverUrl, authUrl, tenantName, credentialsId, checkmarxInstallation, item);
+
+                return connectionTests.test(key, () -> {
+                    CheckmarxApiToken checkmarxApiToken = getCheckmarxApiToken(credentialsId, item);
+                    ScanConfig scanConfig = new ScanConfig();
+                    scanConfig.setServerUrl(serverUrl);
+                    scanConfig.setBaseAuthUrl(authUrl);
+                    scanConfig.setTenantName(tenantName);
+                    Map<String, String> cliEnvironment = PluginUtils.getAuthenticationEnvironment(scanConfig, checkmarxApiToken);
+
+                    TaskListener listener = new StreamTaskListener(new ByteArrayOutputStream(), StandardCharsets.UTF_8);
+                    Launcher launcher = Jenkins.get().createLauncher(listener);
+                    String cxInstallationPath = getCheckmarxInstallationPath(checkmarxInstallation, launcher, listener);
+
+                    return PluginUtils.validateAuthentication(launcher, listener, cliEnvironment, cxInstallationPath)
+                            ? FormValidation.ok("Success") : FormValidation.ok("Failed ");
+                });
+            } catch (final Exception e) {
+                return FormValidation.ok("Error: " + e.getMessage());
+            }
+        }
 
-                if (useAuthenticationUrl) {
-                    config.setBaseAuthUri(baseAuthUrl);
+        /**
+         * Reports the outcome of the connection test started with the same settings, without starting another one.
+         */
+        public FormValidation doTestConnectionStatus(@QueryParameter final String serverUrl,
+                                                     @QueryParameter final boolean useAuthenticationUrl,
+                                                     @QueryParameter final String baseAuthUrl,
+                                                     @QueryParameter final String tenantName,
+                                                     @QueryParameter final String credentialsId,
+                                                     @QueryParameter final String checkmarxInstallation,
+                                                     @AncestorInPath Item item,
+                                                     @AncestorInPath final Job job) {
+            try {
+                if (job == null) {
+                    Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+                } else {
+                    job.checkPermission(Item.CONFIGURE);
                 }
 
-                CxAuth cxAuth = new CxAuth(config, LOG);
-                Integer valid = cxAuth.cxAuthValidate();
-
-                return valid != null && valid == authValid ? FormValidation.ok("Success") : FormValidation.ok("Failed ");
+                final String authUrl = useAuthenticationUrl ? baseAuthUrl : null;
+                return connectionTests.status(getConnectionTestKey(serverUrl, authUrl, tenantName, credentialsId, checkmarxInstallation, item));
             } catch (final Exception e) {
                 return FormValidation.ok("Error: " + e.getMessage());
             }
         }
 
-        private String getCheckmarxInstallationPath(String checkmarxInstallation) throws Exception {
-            if (StringUtils.isEmpty(checkmarxInstallation)) throw new Exception("Checkmarx installation not provided");
-
-            TaskListener taskListener = () -> System.out;
-            Launcher launcher = Jenkins.get().createLauncher(taskListener);
-            Computer computer = Arrays.stream(Jenkins.get().getComputers()).findFirst().orElseThrow(() -> new Exception("Error getting runner"));
-            Node node = Optional.ofNullable(computer.getNode()).orElseThrow(() -> new Exception("Error getting runner"));
+        /**
+         * The credential resolves differently depending on the item, so its outcome is not shared across items.
+         */
+        private static String getConnectionTestKey(String serverUrl, String authUrl, String tenantName, String credentialsId,
+                                                   String checkmarxInstallation, Item item) {
+            return String.join("|", serverUrl, String.valueOf(authUrl), String.valueOf(tenantName), String.valueOf(credentialsId),
+                    String.valueOf(checkmarxInstallation), item != null ? item.getFullName() : "");
+        }
 
-            CheckmarxInstallation cxInstallation = PluginUtils
-                    .findCheckmarxInstallation(checkmarxInstallation)
-                    .forNode(node, taskListener);
+        private String getCheckmarxInstallationPath(String checkmarxInstallation, Launcher launcher, TaskListener listener) throws Exception {
+            if (StringUtils.isEmpty(checkmarxInstallation)) throw new Exception("Checkmarx installation not provided");
 
-            return cxInstallation.getCheckmarxExecutable(launcher);
+            CheckmarxInstallation cxInstallation = Optional.ofNullable(PluginUtils.findCheckmarxInstallation(checkmarxInstallation))
+                    .orElseThrow(() -> new Exception("Checkmarx installation named '" + checkmarxInstallation + "' was not found"));
+            return cxInstallation.forNode(Jenkins.get(), listener).getCheckmarxExecutable(launcher);
         }
 
-        private CheckmarxApiToken getCheckmarxApiToken(String credentialsId) throws Exception {
+        private CheckmarxApiToken getCheckmarxApiToken(String credentialsId, Item item) throws Exception {
             CheckmarxApiToken checkmarxCredentials =
-                    CredentialsMatchers.firstOrNull(
-                            lookupCredentials(CheckmarxApiToken.class, Jenkins.get(), ACL.SYSTEM, Collections.emptyList()),
-                            withId(credentialsId));
+                    CredentialsMatchers.firstOrNull(credentialsLookupCache.lookup(item), withId(credentialsId));
 
             return Optional.ofNullable(checkmarxCredentials).orElseThrow(() -> new Exception("Error getting credentials"));
         }
 
+        public FormValidation doCheckReportFormats(@QueryParameter String value) {
+            try {
+                PluginUtils.parseReportFormats(value);
+                return FormValidation.ok();
+            } catch (CheckmarxException e) {
+                return FormValidation.error(e.getMessage());
+            }
+        }
+
         public FormValidation doCheckProjectName(@QueryParameter String value) {
             if (Util.fixEmptyAndTrim(value) == null) {
                 return FormValidation.error("Project Name cannot be empty");
@@ -542,7 +680,7 @@ public class CheckmarxScanBuilder extends Builder implements SimpleBuildStep {
                 }
             }
             return result.includeEmptyValue()
-                    .includeAs(ACL.SYSTEM, item, CheckmarxApiToken.class)
+                    .withAll(credentialsLookupCache.lookup(item))
                     .includeCurrentValue(credentialsId);
 
         }
@@ -564,8 +702,7 @@ public class CheckmarxScanBuilder extends Builder implements SimpleBuildStep {
                 return FormValidation.error("Checkmarx API token is required.");
             }
 
-            if (null == CredentialsMatchers.firstOrNull(lookupCredentials(CheckmarxApiToken.class, Jenkins.get(), ACL.SYSTEM, Collections.emptyList()),
-                    anyOf(withId(value), CredentialsMatchers.instanceOf(CheckmarxApiToken.class)))) {
+            if (null == CredentialsMatchers.firstOrNull(credentialsLookupCache.lookup(item), withId(value))) {
                 return FormValidation.error("Cannot find currently selected Checkmarx API token.");
             }
             return FormValidation.ok();
@@ -579,6 +716,21 @@ public class CheckmarxScanBuilder extends Builder implements SimpleBuildStep {
             return "Server URL: " + this.getServerUrl();
 
         }
+
+        /**
+         * Drops the cached credential lookups when a credentials store is saved: the global store, or the store of
+         * a folder or user, which are saved along with their owner.
+         */
+        @Extension
+        public static class CredentialsChangeListener extends SaveableListener {
+
+            @Override
+            public void onChange(Saveable o, XmlFile file) {
+                if (o instanceof SystemCredentialsProvider || o instanceof ItemGroup || o instanceof User) {
+                    ExtensionList.lookupSingleton(CheckmarxScanBuilderDescriptor.class).credentialsLookupCache.invalidateAll();
+                }
+            }
+        }
     }
 
 }
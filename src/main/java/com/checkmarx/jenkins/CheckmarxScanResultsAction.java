@@ -1,29 +1,103 @@
 package com.checkmarx.jenkins;
 
+import com.checkmarx.jenkins.model.ResultsSummary;
+import com.checkmarx.jenkins.results.ResultsIngester;
 import hudson.model.Run;
 import jenkins.model.RunAction2;
+import jenkins.util.VirtualFile;
 import jodd.jerry.Jerry;
 import jodd.jerry.JerryParser;
 import lombok.SneakyThrows;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
-import java.nio.charset.Charset;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.SoftReference;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.util.Objects;
+import java.util.zip.GZIPInputStream;
 
 public class CheckmarxScanResultsAction implements RunAction2 {
     private static final JerryParser parser = Objects.requireNonNull(Jerry.create());
     private transient Run run;
+    private transient volatile SoftReference<Jerry> htmlDocument;
+    /**
+     * Names of the parallel branches that ran the scan, unset outside of parallel branches.
+     */
+    private String label;
+    private String scanId;
+    private ResultsSummary resultsSummary;
+    /**
+     * Path of the HTML report relative to the artifacts of the build, unset for builds archived before it was recorded.
+     */
+    private String reportPath;
 
     public CheckmarxScanResultsAction(@Nonnull final Run<?, ?> run) {
+        this(run, null);
+    }
+
+    public CheckmarxScanResultsAction(@Nonnull final Run<?, ?> run, @CheckForNull final String label) {
         this.run = run;
+        this.label = label;
+    }
+
+    @CheckForNull
+    public static CheckmarxScanResultsAction find(@Nonnull final Run<?, ?> run, @CheckForNull final String label) {
+        for (CheckmarxScanResultsAction action : run.getActions(CheckmarxScanResultsAction.class)) {
+            if (Objects.equals(action.getLabel(), label)) {
+                return action;
+            }
+        }
+        return null;
     }
 
     public Run getRun() {
         return run;
     }
 
+    @CheckForNull
+    public String getLabel() {
+        return label;
+    }
+
+    @CheckForNull
+    public String getScanId() {
+        return scanId;
+    }
+
+    public void setScanId(@CheckForNull final String scanId) {
+        this.scanId = scanId;
+    }
+
+    @CheckForNull
+    public ResultsSummary getResultsSummary() {
+        return resultsSummary;
+    }
+
+    public void setResultsSummary(@CheckForNull final ResultsSummary resultsSummary) {
+        this.resultsSummary = resultsSummary;
+    }
+
+    @CheckForNull
+    public String getReportPath() {
+        return reportPath;
+    }
+
+    public void setReportPath(@CheckForNull final String reportPath) {
+        this.reportPath = reportPath;
+        this.htmlDocument = null;
+    }
+
     @Override
     public void onAttached(final Run<?, ?> run) {
         this.run = run;
@@ -41,12 +115,12 @@ public class CheckmarxScanResultsAction implements RunAction2 {
 
     @Override
     public String getDisplayName() {
-        return "Checkmarx Scan Results";
+        return label != null ? "Checkmarx Scan Results (" + label + ")" : "Checkmarx Scan Results";
     }
 
     @Override
     public String getUrlName() {
-        return "scanResults";
+        return "scanResults" + PluginUtils.getLabelSuffix(label);
     }
 
     public String getReportHtml() {
@@ -66,15 +140,110 @@ public class CheckmarxScanResultsAction implements RunAction2 {
 
     @SneakyThrows
     private Jerry getHtmlDocument() {
-        for (Object artifact : run.getArtifacts()) {
-            if (artifact instanceof Run.Artifact && ((Run.Artifact) artifact).getFileName().contains(PluginUtils.CHECKMARX_AST_RESULTS_HTML)) {
+        final SoftReference<Jerry> cached = htmlDocument;
+        Jerry document = cached != null ? cached.get() : null;
+        if (document == null) {
+            final VirtualFile report = findReport();
+            if (report == null) {
+                return null;
+            }
+            try (InputStream in = openReport(report)) {
+                document = CheckmarxScanResultsAction.parser.parse(IOUtils.toString(in, StandardCharsets.UTF_8));
+            }
+            htmlDocument = new SoftReference<>(document);
+        }
+        return document;
+    }
+
+    /**
+     * Downloads the full HTML report. Compressed reports are sent as they are stored when the client accepts gzip.
+     */
+    public void doReport(final StaplerRequest req, final StaplerResponse rsp) throws IOException {
+        run.checkPermission(Run.ARTIFACTS);
+        final VirtualFile report = findReport();
+        if (report == null) {
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        final String fileName = StringUtils.removeEnd(report.getName(), ReportCompression.GZIP_SUFFIX);
+        rsp.setContentType("text/html;charset=UTF-8");
+        rsp.setHeader("Content-Disposition", "attachment; filename=\"" + fileName + "\"");
+        final boolean sendCompressed = isCompressed(report)
+                && StringUtils.contains(req.getHeader("Accept-Encoding"), "gzip");
+        if (sendCompressed) {
+            rsp.setHeader("Content-Encoding", "gzip");
+        }
+        try (InputStream in = sendCompressed ? report.open() : openReport(report);
+             OutputStream out = rsp.getOutputStream()) {
+            IOUtils.copy(in, out);
+        }
+    }
+
+    /**
+     * Directory of the pages of findings written by the {@link ResultsIngester} for this scan.
+     */
+    File getPagesDir() {
+        return new File(run.getRootDir(), PluginUtils.CHECKMARX_AST_RESULTS + PluginUtils.getLabelSuffix(label));
+    }
+
+    /**
+     * Downloads a page of all the findings as JSON lines, {@code findings?page=0} being the first one. Pages are sent
+     * as they are stored when the client accepts gzip.
+     */
+    public void doFindings(final StaplerRequest req, final StaplerResponse rsp) throws IOException {
+        run.checkPermission(Run.ARTIFACTS);
+        final int page = NumberUtils.toInt(req.getParameter("page"), 0);
+        final File file = new File(getPagesDir(), ResultsIngester.getPageFileName(page));
+        if (resultsSummary == null || page < 0 || page >= resultsSummary.getPages() || !file.isFile()) {
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
 
-                byte[] encoded = Files.readAllBytes(Paths.get(((Run.Artifact) artifact).getFile().getCanonicalPath()));
-                String htmlData = new String(encoded, Charset.defaultCharset());
-                return CheckmarxScanResultsAction.parser.parse(htmlData);
+        rsp.setContentType("application/x-ndjson;charset=UTF-8");
+        final boolean sendCompressed = StringUtils.contains(req.getHeader("Accept-Encoding"), "gzip");
+        if (sendCompressed) {
+            rsp.setHeader("Content-Encoding", "gzip");
+        }
+        try (InputStream in = sendCompressed ? Files.newInputStream(file.toPath()) : new GZIPInputStream(Files.newInputStream(file.toPath()));
+             OutputStream out = rsp.getOutputStream()) {
+            IOUtils.copy(in, out);
+        }
+    }
+
+    /**
+     * Resolves the report through the artifact manager of the build, so that reports kept by external artifact
+     * managers are streamed too. Older builds did not record the path, their report is looked up among the top
+     * level artifacts instead. Either may have been compressed since it was archived.
+     */
+    @CheckForNull
+    private VirtualFile findReport() throws IOException {
+        final VirtualFile root = run.getArtifactManager().root();
+        if (reportPath != null) {
+            for (String path : new String[]{reportPath, reportPath + ReportCompression.GZIP_SUFFIX}) {
+                final VirtualFile report = root.child(path);
+                if (report.isFile()) {
+                    return report;
+                }
+            }
+            return null;
+        }
+        for (VirtualFile artifact : root.list()) {
+            final String name = artifact.getName();
+            if ((name.endsWith(PluginUtils.CHECKMARX_AST_RESULTS_HTML) || name.endsWith(PluginUtils.CHECKMARX_AST_RESULTS_HTML + ReportCompression.GZIP_SUFFIX))
+                    && artifact.isFile()) {
+                return artifact;
             }
         }
         return null;
     }
-}
 
+    private static boolean isCompressed(final VirtualFile report) {
+        return report.getName().endsWith(ReportCompression.GZIP_SUFFIX);
+    }
+
+    private static InputStream openReport(final VirtualFile report) throws IOException {
+        final InputStream in = report.open();
+        return isCompressed(report) ? new GZIPInputStream(in) : in;
+    }
+}
@@ -0,0 +1,296 @@
+package com.checkmarx.jenkins;
+
+import com.checkmarx.jenkins.model.FindingsDelta;
+import com.checkmarx.jenkins.model.ResultsSummary;
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Util;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import jenkins.model.Jenkins;
+import lombok.NonNull;
+import org.jenkinsci.plugins.workflow.actions.ThreadNameAction;
+import org.jenkinsci.plugins.workflow.graph.BlockStartNode;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.jenkinsci.plugins.workflow.steps.Step;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+import org.jenkinsci.plugins.workflow.steps.SynchronousNonBlockingStepExecution;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Runs a scan like {@link CheckmarxScanBuilder} and returns a summary of its results to the pipeline, as a map of
+ * plain values so that scripts can use it without reading the reports or calling the CLI again:
+ * {@code scanId}, {@code total}, {@code counts} by severity, {@code delta} to the baseline build, when there is one,
+ * {@code resultsUrl} and {@code reportUrl}.
+ */
+public class CheckmarxScanStep extends Step {
+
+    private boolean useOwnServerCredentials;
+    private String serverUrl;
+    private boolean useAuthenticationUrl;
+    private String baseAuthUrl;
+    private String tenantName;
+    private String projectName;
+    private String credentialsId;
+    private String checkmarxInstallation;
+    private boolean useOwnAdditionalOptions;
+    private String additionalOptions;
+    private String reportFormats;
+    private boolean removeReportFromWorkspace;
+    private boolean deduplicateScans;
+    private boolean useCachedResults;
+
+    @DataBoundConstructor
+    public CheckmarxScanStep() {
+        // all parameters are optional, as for the build step
+    }
+
+    public boolean getUseOwnServerCredentials() {
+        return useOwnServerCredentials;
+    }
+
+    @DataBoundSetter
+    public void setUseOwnServerCredentials(boolean useOwnServerCredentials) {
+        this.useOwnServerCredentials = useOwnServerCredentials;
+    }
+
+    public String getServerUrl() {
+        return serverUrl;
+    }
+
+    @DataBoundSetter
+    public void setServerUrl(@Nullable String serverUrl) {
+        this.serverUrl = serverUrl;
+    }
+
+    public boolean isUseAuthenticationUrl() {
+        return useAuthenticationUrl;
+    }
+
+    @DataBoundSetter
+    public void setUseAuthenticationUrl(boolean useAuthenticationUrl) {
+        this.useAuthenticationUrl = useAuthenticationUrl;
+    }
+
+    public String getBaseAuthUrl() {
+        return baseAuthUrl;
+    }
+
+    @DataBoundSetter
+    public void setBaseAuthUrl(String baseAuthUrl) {
+        this.baseAuthUrl = baseAuthUrl;
+    }
+
+    public String getTenantName() {
+        return tenantName;
+    }
+
+    @DataBoundSetter
+    public void setTenantName(@Nullable String tenantName) {
+        this.tenantName = tenantName;
+    }
+
+    public String getProjectName() {
+        return projectName;
+    }
+
+    @DataBoundSetter
+    public void setProjectName(String projectName) {
+        this.projectName = projectName;
+    }
+
+    public String getCredentialsId() {
+        return credentialsId;
+    }
+
+    @DataBoundSetter
+    public void setCredentialsId(String credentialsId) {
+        this.credentialsId = credentialsId;
+    }
+
+    public String getCheckmarxInstallation() {
+        return checkmarxInstallation;
+    }
+
+    @DataBoundSetter
+    public void setCheckmarxInstallation(String checkmarxInstallation) {
+        this.checkmarxInstallation = checkmarxInstallation;
+    }
+
+    public boolean getUseOwnAdditionalOptions() {
+        return useOwnAdditionalOptions;
+    }
+
+    @DataBoundSetter
+    public void setUseOwnAdditionalOptions(boolean useOwnAdditionalOptions) {
+        this.useOwnAdditionalOptions = useOwnAdditionalOptions;
+    }
+
+    public String getAdditionalOptions() {
+        return additionalOptions;
+    }
+
+    @DataBoundSetter
+    public void setAdditionalOptions(@Nullable String additionalOptions) {
+        this.additionalOptions = additionalOptions;
+    }
+
+    public String getReportFormats() {
+        return reportFormats;
+    }
+
+    @DataBoundSetter
+    public void setReportFormats(@Nullable String reportFormats) {
+        this.reportFormats = reportFormats;
+    }
+
+    public boolean getRemoveReportFromWorkspace() {
+        return removeReportFromWorkspace;
+    }
+
+    @DataBoundSetter
+    public void setRemoveReportFromWorkspace(boolean removeReportFromWorkspace) {
+        this.removeReportFromWorkspace = removeReportFromWorkspace;
+    }
+
+    public boolean getDeduplicateScans() {
+        return deduplicateScans;
+    }
+
+    @DataBoundSetter
+    public void setDeduplicateScans(boolean deduplicateScans) {
+        this.deduplicateScans = deduplicateScans;
+    }
+
+    public boolean getUseCachedResults() {
+        return useCachedResults;
+    }
+
+    @DataBoundSetter
+    public void setUseCachedResults(boolean useCachedResults) {
+        this.useCachedResults = useCachedResults;
+    }
+
+    CheckmarxScanBuilder toBuilder() {
+        final CheckmarxScanBuilder builder = new CheckmarxScanBuilder(useOwnServerCredentials, serverUrl, useAuthenticationUrl,
+                baseAuthUrl, tenantName, projectName, credentialsId, useOwnAdditionalOptions, additionalOptions);
+        builder.setCheckmarxInstallation(checkmarxInstallation);
+        builder.setReportFormats(reportFormats);
+        builder.setRemoveReportFromWorkspace(removeReportFromWorkspace);
+        builder.setDeduplicateScans(deduplicateScans);
+        builder.setUseCachedResults(useCachedResults);
+        return builder;
+    }
+
+    @Override
+    public StepExecution start(StepContext context) {
+        return new Execution(this, context);
+    }
+
+    private static class Execution extends SynchronousNonBlockingStepExecution<Map<String, Object>> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient CheckmarxScanStep step;
+
+        private Execution(CheckmarxScanStep step, StepContext context) {
+            super(context);
+            this.step = step;
+        }
+
+        @Override
+        protected Map<String, Object> run() throws Exception {
+            final Run<?, ?> run = getContext().get(Run.class);
+            final String label = getBranchLabel(getContext().get(FlowNode.class));
+            step.toBuilder().perform(run, getContext().get(FilePath.class), getContext().get(EnvVars.class),
+                    getContext().get(Launcher.class), getContext().get(TaskListener.class), label);
+            return summarize(run, label);
+        }
+    }
+
+    /**
+     * @return the names of the parallel branches enclosing the step, outermost first, or {@code null} outside of them
+     */
+    @Nullable
+    static String getBranchLabel(@Nullable final FlowNode node) {
+        if (node == null) {
+            return null;
+        }
+        final List<String> branches = new ArrayList<>();
+        for (BlockStartNode block : node.iterateEnclosingBlocks()) {
+            final ThreadNameAction branch = block.getPersistentAction(ThreadNameAction.class);
+            if (branch != null) {
+                branches.add(0, branch.getThreadName());
+            }
+        }
+        return branches.isEmpty() ? null : String.join("/", branches);
+    }
+
+    static Map<String, Object> summarize(final Run<?, ?> run, @Nullable final String label) {
+        final Map<String, Object> summary = new LinkedHashMap<>();
+        final CheckmarxScanResultsAction resultsAction = CheckmarxScanResultsAction.find(run, label);
+        if (resultsAction == null || resultsAction.getScanId() == null) {
+            return summary;
+        }
+
+        summary.put("scanId", resultsAction.getScanId());
+        final ResultsSummary results = resultsAction.getResultsSummary();
+        if (results != null) {
+            summary.put("total", results.getTotal());
+            summary.put("counts", new HashMap<>(results.getSeverityCounts()));
+        }
+
+        final CheckmarxDeltaAction deltaAction = CheckmarxDeltaAction.find(run, label);
+        if (deltaAction != null) {
+            final FindingsDelta delta = deltaAction.getDelta();
+            final Map<String, Object> deltaSummary = new LinkedHashMap<>();
+            deltaSummary.put("baselineBuild", delta.getBaselineBuild());
+            deltaSummary.put("newCount", delta.getNewCount());
+            deltaSummary.put("fixedCount", delta.getFixedCount());
+            deltaSummary.put("recurringCount", delta.getRecurringCount());
+            deltaSummary.put("new", new HashMap<>(delta.getNewFindings()));
+            deltaSummary.put("fixed", new HashMap<>(delta.getFixedFindings()));
+            deltaSummary.put("recurring", new HashMap<>(delta.getRecurringFindings()));
+            summary.put("delta", deltaSummary);
+        }
+
+        final String resultsUrl = Util.fixNull(Jenkins.get().getRootUrl()) + run.getUrl() + resultsAction.getUrlName() + "/";
+        summary.put("resultsUrl", resultsUrl);
+        summary.put("reportUrl", resultsUrl + "report");
+        return summary;
+    }
+
+    @Extension
+    public static class DescriptorImpl extends StepDescriptor {
+
+        @Override
+        public Set<? extends Class<?>> getRequiredContext() {
+            return new HashSet<>(Arrays.asList(Run.class, FilePath.class, EnvVars.class, Launcher.class, TaskListener.class));
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "checkmarxASTScanner";
+        }
+
+        @NonNull
+        @Override
+        public String getDisplayName() {
+            return "Execute Checkmarx AST Scan";
+        }
+    }
+}
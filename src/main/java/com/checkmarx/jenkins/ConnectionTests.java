@@ -0,0 +1,85 @@
+package com.checkmarx.jenkins;
+
+import hudson.model.Computer;
+import hudson.util.FormValidation;
+import jenkins.util.SystemProperties;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs "Test Connection" checks in the background so that Stapler request threads are never blocked by a slow
+ * server. A check started for a (server, tenant, credential, item) combination is shared by every request asking for
+ * the same combination, and its outcome is kept for a short time.
+ */
+final class ConnectionTests {
+
+    private static final long RESULT_TTL_MILLIS = TimeUnit.SECONDS.toMillis(
+            SystemProperties.getLong(ConnectionTests.class.getName() + ".resultTtlSeconds", 60L));
+    private static final long WAIT_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the outcome of the check identified by the key, starting it if no recent outcome is known.
+     * When the check does not finish within a few seconds its progress is reported instead, and asking again
+     * later returns the outcome of the same check.
+     */
+    FormValidation test(final String key, final Callable<FormValidation> check) throws InterruptedException {
+        final long now = System.currentTimeMillis();
+        entries.values().removeIf(entry -> entry.isExpired(now));
+
+        final Entry entry = entries.computeIfAbsent(key, k -> new Entry(check));
+        try {
+            return entry.result.get(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return FormValidation.ok("Still testing the connection, click Check Result to see its outcome.");
+        } catch (ExecutionException e) {
+            entries.remove(key, entry);
+            return FormValidation.ok("Error: " + e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Returns the outcome of the check identified by the key without starting one, to poll a check still running.
+     */
+    FormValidation status(final String key) throws InterruptedException {
+        final Entry entry = entries.get(key);
+        if (entry == null || entry.isExpired(System.currentTimeMillis())) {
+            return FormValidation.ok("No recent connection test, click Test Connection to start one.");
+        }
+        if (!entry.result.isDone()) {
+            return FormValidation.ok("Still testing the connection.");
+        }
+        try {
+            return entry.result.get();
+        } catch (ExecutionException e) {
+            entries.remove(key, entry);
+            return FormValidation.ok("Error: " + e.getCause().getMessage());
+        }
+    }
+
+    private static final class Entry {
+        private final Future<FormValidation> result;
+        private volatile long completedAt;
+
+        private Entry(final Callable<FormValidation> check) {
+            this.result = Computer.threadPoolForRemoting.submit(() -> {
+                try {
+                    return check.call();
+                } finally {
+                    completedAt = System.currentTimeMillis();
+                }
+            });
+        }
+
+        private boolean isExpired(final long now) {
+            return result.isDone() && now - completedAt > RESULT_TTL_MILLIS;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.checkmarx.jenkins;
+
+import jenkins.util.SystemProperties;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Scans running on this controller, shared with the builds asking for an identical scan.
+ */
+final class InFlightScans {
+
+    private static final long JOIN_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(
+            SystemProperties.getLong(InFlightScans.class.getName() + ".joinTimeoutMinutes", 120L));
+    private static final ConcurrentMap<String, CompletableFuture<String>> SCANS = new ConcurrentHashMap<>();
+
+    private InFlightScans() {
+        // squid:S1118
+    }
+
+    /**
+     * Waits for an identical running scan, if any, and runs the given scan when there is none or it fails.
+     *
+     * @return the scan ID, or {@code null} when the scan did not complete
+     */
+    @CheckForNull
+    static String submitOrJoin(@Nonnull final String key, @Nonnull final CxLoggerAdapter log, @Nonnull final Callable<String> scan) throws Exception {
+        return submitOrJoin(key, log, scan, JOIN_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Like {@link #submitOrJoin(String, CxLoggerAdapter, Callable)}, running the given scan when the identical scan
+     * does not complete in time. An interrupted wait is rethrown, the identical scan is left to its own build.
+     */
+    @CheckForNull
+    static String submitOrJoin(@Nonnull final String key, @Nonnull final CxLoggerAdapter log, @Nonnull final Callable<String> scan,
+                               final long joinTimeoutMillis) throws Exception {
+        final CompletableFuture<String> own = new CompletableFuture<>();
+        final CompletableFuture<String> running = SCANS.putIfAbsent(key, own);
+        if (running != null) {
+            log.info("An identical scan is already running on this controller, waiting for its results.");
+            try {
+                final String scanId = running.get(joinTimeoutMillis, TimeUnit.MILLISECONDS);
+                if (scanId != null) {
+                    log.info("Sharing the results of scan " + scanId + ".");
+                    return scanId;
+                }
+            } catch (ExecutionException e) {
+                log.info("The identical scan failed: " + e.getCause());
+            } catch (TimeoutException e) {
+                log.info("The identical scan did not complete within " + TimeUnit.MILLISECONDS.toMinutes(joinTimeoutMillis) + " minutes.");
+            } catch (InterruptedException e) {
+                log.info("Stopped waiting for the identical scan.");
+                throw e;
+            }
+            log.info("Submitting a scan of our own.");
+            return scan.call();
+        }
+
+        try {
+            final String scanId = scan.call();
+            own.complete(scanId);
+            return scanId;
+        } catch (Exception e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            own.complete(null);
+            SCANS.remove(key, own);
+        }
+    }
+}
@@ -1,102 +1,420 @@
 package com.checkmarx.jenkins;
 
-import com.checkmarx.ast.scans.*;
-import com.checkmarx.ast.exceptions.CxException;
-import com.checkmarx.ast.results.*;
 import com.checkmarx.jenkins.credentials.CheckmarxApiToken;
+import com.checkmarx.jenkins.console.ScanProgressOutputStream;
 import com.checkmarx.jenkins.model.ScanConfig;
 import com.checkmarx.jenkins.tools.CheckmarxInstallation;
+import com.checkmarx.jenkins.exception.CheckmarxException;
+import com.checkmarx.jenkins.model.FindingsDelta;
+import com.checkmarx.jenkins.model.ResultsSummary;
+import com.checkmarx.jenkins.results.FindingsIndex;
+import com.checkmarx.jenkins.results.ResultsIngester;
+import hudson.AbortException;
+import hudson.EnvVars;
 import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Proc;
+import hudson.Util;
+import hudson.model.Item;
+import hudson.model.Job;
 import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import hudson.util.ArgumentListBuilder;
+import jenkins.MasterToSlaveFileCallable;
 import jenkins.model.Jenkins;
+import jenkins.util.BuildListenerAdapter;
+import net.sf.json.JSONException;
+import net.sf.json.JSONObject;
+import org.apache.commons.io.output.TeeOutputStream;
 import org.apache.commons.lang.StringUtils;
 
+import javax.annotation.CheckForNull;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.net.URISyntaxException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.stream.Stream;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import static com.cloudbees.plugins.credentials.CredentialsProvider.findCredentialById;
 import static hudson.Util.fixEmptyAndTrim;
-import static java.nio.charset.StandardCharsets.UTF_8;
 
 public class PluginUtils {
 
     private static final String JENKINS = "Jenkins";
     private static final String RESULTS_OVERVIEW_URL = "{serverUrl}/#/projects/{projectId}/overview";
-    public static final String CHECKMARX_AST_RESULTS_HTML = "checkmarx-ast-results.html";
+    public static final String CHECKMARX_AST_RESULTS = "checkmarx-ast-results";
+    public static final String CHECKMARX_AST_RESULTS_HTML = CHECKMARX_AST_RESULTS + ".html";
+    public static final String REPORT_FORMAT_HTML = "summaryHTML";
+    public static final String REPORT_FORMAT_JSON = "json";
+    public static final List<String> REPORT_FORMATS = Collections.unmodifiableList(Arrays.asList(REPORT_FORMAT_HTML, REPORT_FORMAT_JSON, "sarif"));
+    private static final String CHANGE_TARGET = "CHANGE_TARGET";
+    private static final long CANCEL_TIMEOUT_SECONDS = 60;
+    private static final long AUTH_VALIDATE_TIMEOUT_SECONDS = 60;
 
     public static CheckmarxInstallation findCheckmarxInstallation(final String checkmarxInstallation) {
         final CheckmarxScanBuilder.CheckmarxScanBuilderDescriptor descriptor = Jenkins.get().getDescriptorByType(CheckmarxScanBuilder.CheckmarxScanBuilderDescriptor.class);
-        return Stream.of((descriptor).getInstallations())
-                .filter(installation -> installation.getName().equals(checkmarxInstallation))
-                .findFirst().orElse(null);
+        return descriptor.getInstallation(checkmarxInstallation);
     }
 
     public static CheckmarxApiToken getCheckmarxTokenCredential(final Run<?, ?> run, final String credentialsId) {
         return findCredentialById(credentialsId, CheckmarxApiToken.class, run);
     }
 
+    /**
+     * @return the suffix of the files of a parallel branch, empty outside of parallel branches
+     */
+    public static String getLabelSuffix(@CheckForNull final String label) {
+        return label != null ? "_" + label.replaceAll("[^A-Za-z0-9._-]", "_") : "";
+    }
+
+    /**
+     * @return the name, without extension, of the reports the CLI writes to the workspace
+     */
+    public static String getResultsName(final FilePath workspace, @CheckForNull final String label) {
+        return workspace.getName() + "_" + CHECKMARX_AST_RESULTS + getLabelSuffix(label);
+    }
+
     public static String getSourceDirectory(final FilePath workspace) {
         final File file = new File(workspace.getRemote());
 
         return file.getAbsolutePath();
     }
 
-    public static CxScan submitScanDetailsToWrapper(final ScanConfig scanConfig, final String checkmarxCliExecutable, final CxLoggerAdapter log) throws IOException, InterruptedException, URISyntaxException {
-        log.info("Submitting the scan details to the CLI wrapper.");
+    /**
+     * Creates a scan of the workspace with the CLI and waits for it to complete. The CLI is started through the
+     * launcher of the build, so it runs on the node holding the workspace, and its output, errors included, is
+     * streamed to the build log line by line as it comes, with the progress of the scan annotated.
+     * When the build is aborted, the CLI is killed and the scan is canceled on the server.
+     *
+     * @return the ID of the scan, or {@code null} when it did not complete
+     */
+    @CheckForNull
+    public static String submitScan(final FilePath workspace, final Launcher launcher, final TaskListener listener, final ScanConfig scanConfig, final Map<String, String> cliEnvironment, final String checkmarxCliExecutable, final CxLoggerAdapter log) throws IOException, InterruptedException {
+        log.info("Submitting the scan details to the CLI.");
 
-        final CxAuth wrapper = initiateWrapperObject(scanConfig, checkmarxCliExecutable, log);
+        final ArgumentListBuilder args = new ArgumentListBuilder(checkmarxCliExecutable, "scan", "create");
+        args.add("--agent", JENKINS);
+        args.add("-s", scanConfig.getSourceDirectory());
+        args.add("--project-name", scanConfig.getProjectName());
+        if (StringUtils.isNotEmpty(scanConfig.getBranchName())) {
+            args.add("--branch", scanConfig.getBranchName());
+        }
+        args.add("--scan-info-format", "json");
+        if (StringUtils.isNotEmpty(scanConfig.getAdditionalOptions())) {
+            args.add(Util.tokenize(scanConfig.getAdditionalOptions()));
+        }
 
-        final Map<CxParamType, String> params = new HashMap<>();
-        params.put(CxParamType.AGENT, PluginUtils.JENKINS);
-        params.put(CxParamType.S, scanConfig.getSourceDirectory());
-        params.put(CxParamType.PROJECT_NAME, scanConfig.getProjectName());
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final int exitCode;
+        try (ScanProgressOutputStream progress = new ScanProgressOutputStream(listener.getLogger())) {
+            final Proc proc = launcher.launch().cmds(args).envs(cliEnvironment).pwd(workspace)
+                    .stdout(new TeeOutputStream(progress, output)).stderr(listener.getLogger()).start();
+            try {
+                exitCode = proc.join();
+            } catch (InterruptedException e) {
+                // the build was aborted, stop the CLI and the scan on the server, which would keep using capacity
+                try {
+                    proc.kill();
+                } catch (IOException | InterruptedException killFailure) {
+                    log.error("Could not stop the CLI: " + killFailure);
+                }
+                cancelScan(workspace, launcher, listener, progress.getScanId(), cliEnvironment, checkmarxCliExecutable, log);
+                throw e;
+            }
+        }
 
-        if (StringUtils.isNotEmpty(scanConfig.getAdditionalOptions())) {
-            params.put(CxParamType.ADDITIONAL_PARAMETERS, scanConfig.getAdditionalOptions());
+        log.info("--------------- Checkmarx execution completed ---------------");
+
+        if (exitCode != 0) {
+            log.error("The scan did not complete. Exit code from AST-CLI: " + exitCode);
+            return null;
         }
+        return parseScanId(output.toString(StandardCharsets.UTF_8.name()));
+    }
 
-        if (StringUtils.isNotEmpty(scanConfig.getBranchName())) {
-            params.put(CxParamType.BRANCH, scanConfig.getBranchName());
+    private static void cancelScan(final FilePath workspace, final Launcher launcher, final TaskListener listener, @CheckForNull final String scanId, final Map<String, String> cliEnvironment, final String checkmarxCliExecutable, final CxLoggerAdapter log) {
+        if (scanId == null) {
+            log.info("The build was aborted before the scan was created.");
+            return;
+        }
+        log.info("The build was aborted, canceling scan " + scanId + ".");
+        try {
+            final int exitCode = launcher.launch().cmds(checkmarxCliExecutable, "scan", "cancel", "--scan-id", scanId)
+                    .envs(cliEnvironment).pwd(workspace).stdout(listener)
+                    .start().joinWithTimeout(CANCEL_TIMEOUT_SECONDS, TimeUnit.SECONDS, listener);
+            if (exitCode == 0) {
+                log.info("Scan " + scanId + " canceled.");
+            } else {
+                log.error("Could not cancel scan " + scanId + ". Exit code from AST-CLI: " + exitCode);
+            }
+        } catch (IOException e) {
+            log.error("Could not cancel scan " + scanId + ": " + e);
+        } catch (InterruptedException e) {
+            log.error("Gave up canceling scan " + scanId + ".");
+            Thread.currentThread().interrupt();
         }
+    }
 
-        final CxCommandOutput cxScan = wrapper.cxScanCreate(params);
+    /**
+     * @return whether the server accepted the credentials of the environment
+     */
+    public static boolean validateAuthentication(final Launcher launcher, final TaskListener listener, final Map<String, String> cliEnvironment, final String checkmarxCliExecutable) throws IOException, InterruptedException {
+        return launcher.launch().cmds(checkmarxCliExecutable, "auth", "validate").envs(cliEnvironment).stdout(listener)
+                .start().joinWithTimeout(AUTH_VALIDATE_TIMEOUT_SECONDS, TimeUnit.SECONDS, listener) == 0;
+    }
 
-        /**
-         * Return the object and pass the scan ID to generate report
-         */
-        log.info("--------------- Checkmarx execution completed ---------------");
+    /**
+     * Reads the scan ID from the scan information the CLI prints as the last line of its standard output.
+     */
+    static String parseScanId(final String stdout) throws AbortException {
+        final String trimmed = StringUtils.stripEnd(stdout, null);
+        final String lastLine = trimmed.substring(trimmed.lastIndexOf('\n') + 1).trim();
+        final String scanId;
+        try {
+            scanId = fixEmptyAndTrim(JSONObject.fromObject(lastLine).optString("ID", null));
+        } catch (JSONException e) {
+            throw new AbortException("The CLI did not print the scan information as JSON, its last line of output was: " + lastLine);
+        }
+        if (scanId == null) {
+            throw new AbortException("The scan information printed by the CLI has no ID: " + lastLine);
+        }
+        return scanId;
+    }
+
+    /**
+     * Identifies the scans that would produce the same results, the sources being a commit or a fingerprint of the workspace.
+     */
+    public static String getScanKey(final ScanConfig scanConfig, final String sources) {
+        return String.join("|", scanConfig.getServerUrl(), String.valueOf(scanConfig.getTenantName()), scanConfig.getProjectName(),
+                String.valueOf(scanConfig.getBranchName()), String.valueOf(scanConfig.getAdditionalOptions()), sources);
+    }
 
+    /**
+     * Identifies the scans of the same commit of a project, with the same options, in the scan result cache.
+     */
+    public static String getResultCacheKey(final ScanConfig scanConfig, final String commit) {
+        return String.join("|", scanConfig.getServerUrl(), String.valueOf(scanConfig.getTenantName()), scanConfig.getProjectName(),
+                String.valueOf(scanConfig.getAdditionalOptions()), commit);
+    }
 
-        return  ((cxScan.getExitCode() == 0) && (cxScan.getScanObjectList() != null)) ? cxScan.getScanObjectList().get(0) : null;
+    /**
+     * SHA-256 of the paths and contents of the workspace sources, without version control metadata, build outputs and
+     * earlier reports. Only used when the build has no commit to identify its sources.
+     */
+    public static String fingerprintSources(final FilePath workspace) throws IOException, InterruptedException {
+        return workspace.act(new SourcesFingerprint());
+    }
+
+    private static class SourcesFingerprint extends MasterToSlaveFileCallable<String> {
+        private static final long serialVersionUID = 1L;
+        private static final Set<String> EXCLUDED_DIRECTORIES = new HashSet<>(Arrays.asList(".git", ".svn", ".hg", "CVS",
+                "target", "build", "dist", "out", "node_modules", ".gradle"));
+
+        @Override
+        public String invoke(File workspace, VirtualChannel channel) throws IOException {
+            final Path root = workspace.toPath();
+            final List<Path> files = new ArrayList<>();
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    return !dir.equals(root) && EXCLUDED_DIRECTORIES.contains(dir.getFileName().toString())
+                            ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile() && !file.getFileName().toString().contains(CHECKMARX_AST_RESULTS)) {
+                        files.add(root.relativize(file));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            Collections.sort(files);
+
+            final MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IOException(e);
+            }
+            final byte[] buffer = new byte[8192];
+            for (Path file : files) {
+                final Path path = root.resolve(file);
+                digest.update((file.toString().replace('\\', '/') + "\0" + Files.size(path) + "\0").getBytes(StandardCharsets.UTF_8));
+                try (InputStream in = Files.newInputStream(path)) {
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        digest.update(buffer, 0, read);
+                    }
+                }
+            }
+            return Util.toHexString(digest.digest());
+        }
     }
 
     public static String getCheckmarxResultsOverviewUrl() {
         return String.format(RESULTS_OVERVIEW_URL);
     }
 
-    public static void generateHTMLReport(FilePath workspace, String scanId, final ScanConfig scanConfig, final String checkmarxCliExecutable, final CxLoggerAdapter log) throws IOException, InterruptedException, CxException, URISyntaxException {
-        CxAuth auth = initiateWrapperObject(scanConfig, checkmarxCliExecutable, log);
-        String htmlData = auth.cxGetResultsSummary(scanId, "", "");
-        workspace.child(workspace.getName() + "_" + CHECKMARX_AST_RESULTS_HTML).write(htmlData, UTF_8.name());
+    /**
+     * Parses a comma or space separated list of report formats. The HTML summary, shown by the results action,
+     * and the JSON results, used for the delta to the baseline build, are always part of the returned formats.
+     */
+    public static List<String> parseReportFormats(final String reportFormats) throws CheckmarxException {
+        final Set<String> formats = new LinkedHashSet<>();
+        formats.add(REPORT_FORMAT_HTML);
+        formats.add(REPORT_FORMAT_JSON);
+        for (String format : StringUtils.split(StringUtils.defaultString(reportFormats), ", ")) {
+            final String knownFormat = REPORT_FORMATS.stream()
+                    .filter(f -> f.equalsIgnoreCase(format))
+                    .findFirst()
+                    .orElseThrow(() -> new CheckmarxException("Unsupported report format '" + format + "'. Supported formats are " + REPORT_FORMATS + "."));
+            formats.add(knownFormat);
+        }
+        return new ArrayList<>(formats);
+    }
+
+    /**
+     * Fetches the results of a scan in all the requested formats with a single CLI call. The CLI runs on the node
+     * holding the workspace and writes each report straight into it, so the results never go through the controller.
+     */
+    public static void generateReports(final FilePath workspace, final Launcher launcher, final TaskListener listener, final String scanId, final ScanConfig scanConfig, final Map<String, String> cliEnvironment, final String checkmarxCliExecutable, final String resultsName) throws IOException, InterruptedException {
+        final ArgumentListBuilder args = new ArgumentListBuilder(checkmarxCliExecutable, "result");
+        args.add("--scan-id", scanId);
+        args.add("--report-format", String.join(",", scanConfig.getReportFormats()));
+        args.add("--output-name", resultsName);
+        args.add("--output-path", workspace.getRemote());
+
+        final int exitCode = launcher.launch().cmds(args).envs(cliEnvironment).pwd(workspace).stdout(listener).join();
+        if (exitCode != 0) {
+            throw new IOException("Could not retrieve the scan results. Exit code from AST-CLI: " + exitCode);
+        }
+    }
+
+    /**
+     * Passes the server and credentials to the CLI through its environment, so that the secret does not show in
+     * the command line of the process. The environment only takes Strings, like {@code Secret} keeps its plain text.
+     */
+    public static Map<String, String> getAuthenticationEnvironment(final ScanConfig scanConfig, final CheckmarxApiToken checkmarxToken) throws IOException, InterruptedException {
+        final Map<String, String> env = new HashMap<>();
+        env.put("CX_BASE_URI", scanConfig.getServerUrl());
+        if (fixEmptyAndTrim(scanConfig.getBaseAuthUrl()) != null) {
+            env.put("CX_BASE_AUTH_URI", scanConfig.getBaseAuthUrl());
+        }
+        if (fixEmptyAndTrim(scanConfig.getTenantName()) != null) {
+            env.put("CX_TENANT", scanConfig.getTenantName());
+        }
+        env.put("CX_CLIENT_ID", checkmarxToken.getClientId());
+        env.put("CX_CLIENT_SECRET", checkmarxToken.getToken().getPlainText());
+        return Collections.unmodifiableMap(env);
+    }
+
+    /**
+     * Archives the HTML report of the workspace, gzipped on the node, through the artifact manager of the build,
+     * which copies it once from the node, without scanning the workspace for matching files.
+     *
+     * @return the path of the compressed report relative to the artifacts of the build
+     */
+    public static String archiveReport(final Run<?, ?> run, final FilePath workspace, final Launcher launcher, final TaskListener listener, final String resultsName, final boolean removeFromWorkspace) throws IOException, InterruptedException {
+        final FilePath report = workspace.child(resultsName + ".html");
+        final FilePath compressed = new FilePath(report.getChannel(), report.act(new CompressReport()));
+        final String reportPath = compressed.getName();
+        try {
+            run.pickArtifactManager().archive(workspace, launcher, BuildListenerAdapter.wrap(listener), Collections.singletonMap(reportPath, reportPath));
+        } finally {
+            compressed.delete();
+        }
+        if (removeFromWorkspace) {
+            report.delete();
+        }
+        return reportPath;
+    }
+
+    private static class CompressReport extends MasterToSlaveFileCallable<String> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public String invoke(File report, VirtualChannel channel) throws IOException {
+            return ReportCompression.compress(report).getPath();
+        }
     }
 
-    private static CxAuth initiateWrapperObject(final ScanConfig scanConfig, final String checkmarxCliExecutable, final CxLoggerAdapter log) throws IOException, InterruptedException, CxException, URISyntaxException {
-        final CxScanConfig scan = new CxScanConfig();
-        scan.setBaseUri(scanConfig.getServerUrl());
-        scan.setBaseAuthUri(scanConfig.getBaseAuthUrl());
-        if(fixEmptyAndTrim(scanConfig.getTenantName())!= null) {
-            scan.setTenant(scanConfig.getTenantName());
+    /**
+     * Summarizes, pages and indexes the JSON results in a single pass, and compares them to the baseline build.
+     */
+    public static void ingestResults(final Run<?, ?> run, final FilePath workspace, final EnvVars envVars, final CheckmarxScanResultsAction resultsAction, final String resultsName, final CxLoggerAdapter log) throws IOException, InterruptedException {
+        final FilePath results = workspace.child(resultsName + ".json");
+        if (!results.exists()) {
+            log.warn("No JSON results found in the workspace, skipping the results summary.");
+            return;
+        }
+
+        final String suffix = getLabelSuffix(resultsAction.getLabel());
+        final Run<?, ?> baseline = findBaselineBuild(run, envVars);
+        final File baselineIndex = baseline != null ? new File(baseline.getRootDir(), FindingsIndex.getFileName(suffix)) : null;
+
+        final FindingsDelta delta;
+        final ResultsSummary summary;
+        try (InputStream in = results.read();
+             ResultsIngester ingester = new ResultsIngester(resultsAction.getPagesDir(),
+                     ResultsIngester.DEFAULT_TOP_K, ResultsIngester.DEFAULT_PAGE_SIZE)) {
+            delta = FindingsIndex.update(in, new File(run.getRootDir(), FindingsIndex.getFileName(suffix)),
+                    baselineIndex != null && baselineIndex.isFile() ? baselineIndex : null, ingester);
+            summary = ingester.getSummary();
         }
-        scan.setClientId(scanConfig.getCheckmarxToken().getClientId());
-        scan.setClientSecret(scanConfig.getCheckmarxToken().getToken().getPlainText());
-        scan.setPathToExecutable(checkmarxCliExecutable);
 
-        return new CxAuth(scan, log);
+        resultsAction.setResultsSummary(summary);
+        log.info("Scan results: " + summary.getTotal() + " findings, " + summary.getSeverityCounts());
+
+        if (delta == null) {
+            log.info("No baseline build with Checkmarx results found, skipping the delta to the baseline build.");
+            return;
+        }
+
+        delta.setBaselineBuild(baseline.getFullDisplayName());
+        delta.setBaselineUrl(baseline.getUrl());
+        final CheckmarxDeltaAction previous = CheckmarxDeltaAction.find(run, resultsAction.getLabel());
+        if (previous != null) {
+            run.removeAction(previous);
+        }
+        run.addAction(new CheckmarxDeltaAction(delta, resultsAction.getLabel()));
+        log.info("Findings compared to " + baseline.getFullDisplayName() + ": " + delta.getSummary());
+    }
+
+    /**
+     * The baseline of a build is the last successful build of the branch a change request targets, or of the
+     * same job for any other build.
+     */
+    @CheckForNull
+    static Run<?, ?> findBaselineBuild(final Run<?, ?> run, final EnvVars envVars) {
+        Job<?, ?> job = run.getParent();
+        final String changeTarget = fixEmptyAndTrim(envVars.get(CHANGE_TARGET));
+        if (changeTarget != null) {
+            final Item target = job.getParent().getItem(Util.rawEncode(changeTarget));
+            if (target instanceof Job) {
+                job = (Job<?, ?>) target;
+            }
+        }
+        final Run<?, ?> baseline = job.getLastSuccessfulBuild();
+        return baseline != run ? baseline : null;
     }
 
 }
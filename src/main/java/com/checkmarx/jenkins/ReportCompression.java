@@ -0,0 +1,133 @@
+package com.checkmarx.jenkins;
+
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.model.Job;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * HTML reports are archived gzipped, they are very repetitive and shrink by an order of magnitude. Reports archived
+ * uncompressed by earlier versions of the plugin are compressed in the background after startup, until all were.
+ */
+public final class ReportCompression {
+
+    public static final String GZIP_SUFFIX = ".gz";
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReportCompression.class.getName());
+    private static final String MIGRATION_MARKER = ReportCompression.class.getName() + ".migrated";
+
+    private ReportCompression() {
+        // squid:S1118
+    }
+
+    /**
+     * Writes a gzipped copy of the given file next to it. The copy only appears once it is complete.
+     *
+     * @return the compressed copy
+     */
+    public static File compress(@Nonnull final File source) throws IOException {
+        final File target = new File(source.getPath() + GZIP_SUFFIX);
+        final File partial = new File(target.getPath() + ".tmp");
+        try (InputStream in = Files.newInputStream(source.toPath());
+             OutputStream out = new GZIPOutputStream(Files.newOutputStream(partial.toPath()))) {
+            IOUtils.copy(in, out);
+        } catch (IOException e) {
+            Files.deleteIfExists(partial.toPath());
+            throw e;
+        }
+        Files.move(partial.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return target;
+    }
+
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void migrateArchivedReports() {
+        final File marker = new File(Jenkins.get().getRootDir(), MIGRATION_MARKER);
+        if (marker.exists()) {
+            return;
+        }
+
+        Timer.get().submit(() -> {
+            final Migration migration = new Migration();
+            for (Job<?, ?> job : Jenkins.get().allItems(Job.class)) {
+                migration.migrate(job.getBuildDir());
+            }
+            LOG.info("Compressed {} archived Checkmarx report(s)", migration.migrated);
+            if (migration.failed > 0) {
+                LOG.warn("Could not compress {} archived Checkmarx report(s), retrying on the next startup", migration.failed);
+                return;
+            }
+            try {
+                Files.createFile(marker.toPath());
+            } catch (IOException e) {
+                LOG.warn("Could not record the compression of the archived Checkmarx reports", e);
+            }
+        });
+    }
+
+    private static final class Migration {
+        private int migrated;
+        private int failed;
+
+        /**
+         * Compresses the reports of the local artifacts of the builds in the given directory that ran a Checkmarx
+         * scan, going through the build directories only, so that the builds themselves are not loaded.
+         */
+        private void migrate(final File buildsDir) {
+            final File[] builds = buildsDir.listFiles(file -> file.isDirectory() && !Files.isSymbolicLink(file.toPath()));
+            if (builds == null) {
+                return;
+            }
+            for (File build : builds) {
+                final File[] reports = new File(build, "archive").listFiles((dir, name) -> name.endsWith(PluginUtils.CHECKMARX_AST_RESULTS_HTML));
+                if (reports == null || reports.length == 0) {
+                    continue;
+                }
+                try {
+                    if (!hasScanResults(build)) {
+                        continue;
+                    }
+                } catch (IOException e) {
+                    LOG.warn("Could not read the build record in {}", build, e);
+                    failed += reports.length;
+                    continue;
+                }
+                for (File report : reports) {
+                    try {
+                        compress(report);
+                        Files.delete(report.toPath());
+                        migrated++;
+                    } catch (IOException e) {
+                        LOG.warn("Could not compress the archived Checkmarx report {}", report, e);
+                        failed++;
+                    }
+                }
+            }
+        }
+
+        private static boolean hasScanResults(final File build) throws IOException {
+            final File record = new File(build, "build.xml");
+            if (!record.isFile()) {
+                return false;
+            }
+            // the class name is ASCII, any byte of the record decodes as ISO-8859-1
+            try (BufferedReader reader = Files.newBufferedReader(record.toPath(), StandardCharsets.ISO_8859_1)) {
+                return reader.lines().anyMatch(line -> line.contains(CheckmarxScanResultsAction.class.getName()));
+            }
+        }
+    }
+}
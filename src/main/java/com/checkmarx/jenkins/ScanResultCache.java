@@ -0,0 +1,128 @@
+package com.checkmarx.jenkins;
+
+import hudson.XmlFile;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Completed scans by commit, reused by the jobs building the same commit. Too old entries expire, the oldest go first.
+ */
+public final class ScanResultCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ScanResultCache.class.getName());
+    private static final long MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(
+            SystemProperties.getLong(ScanResultCache.class.getName() + ".maxAgeDays", 7L));
+    private static final int MAX_ENTRIES = SystemProperties.getInteger(ScanResultCache.class.getName() + ".maxEntries", 1000);
+
+    private static ScanResultCache instance;
+
+    private final transient XmlFile file;
+    private final transient long maxAgeMillis;
+    private final transient int maxEntries;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+
+    private ScanResultCache(XmlFile file, long maxAgeMillis, int maxEntries) {
+        this.file = file;
+        this.maxAgeMillis = maxAgeMillis;
+        this.maxEntries = maxEntries;
+    }
+
+    public static synchronized ScanResultCache get() {
+        if (instance == null) {
+            instance = load(getConfigFile(), MAX_AGE_MILLIS, MAX_ENTRIES);
+        }
+        return instance;
+    }
+
+    static ScanResultCache load(@Nonnull final XmlFile file, final long maxAgeMillis, final int maxEntries) {
+        final ScanResultCache cache = new ScanResultCache(file, maxAgeMillis, maxEntries);
+        if (file.exists()) {
+            try {
+                file.unmarshal(cache);
+            } catch (IOException e) {
+                LOG.warn("Could not load the cached Checkmarx scans from {}", file, e);
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * @return the ID of the cached scan, or {@code null} when there is none or it expired
+     */
+    @CheckForNull
+    public String lookup(@Nonnull final String key) {
+        return lookup(key, System.currentTimeMillis());
+    }
+
+    @CheckForNull
+    synchronized String lookup(@Nonnull final String key, final long now) {
+        final Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (now - entry.completedAt >= maxAgeMillis) {
+            remove(key);
+            return null;
+        }
+        return entry.scanId;
+    }
+
+    public void store(@Nonnull final String key, @Nonnull final String scanId) {
+        store(key, scanId, System.currentTimeMillis());
+    }
+
+    synchronized void store(@Nonnull final String key, @Nonnull final String scanId, final long now) {
+        entries.remove(key);
+        entries.put(key, new Entry(scanId, now));
+
+        final Iterator<Map.Entry<String, Entry>> oldest = entries.entrySet().iterator();
+        while (oldest.hasNext()) {
+            final Entry entry = oldest.next().getValue();
+            if (entries.size() > maxEntries || now - entry.completedAt >= maxAgeMillis) {
+                oldest.remove();
+            } else {
+                break;
+            }
+        }
+        save();
+    }
+
+    public synchronized void remove(@Nonnull final String key) {
+        if (entries.remove(key) != null) {
+            save();
+        }
+    }
+
+    private void save() {
+        try {
+            file.write(this);
+        } catch (IOException e) {
+            LOG.warn("Could not save the cached Checkmarx scans", e);
+        }
+    }
+
+    private static XmlFile getConfigFile() {
+        return new XmlFile(Jenkins.XSTREAM2, new File(Jenkins.get().getRootDir(), ScanResultCache.class.getName() + ".xml"));
+    }
+
+    private static final class Entry {
+        private final String scanId;
+        private final long completedAt;
+
+        private Entry(String scanId, long completedAt) {
+            this.scanId = scanId;
+            this.completedAt = completedAt;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.checkmarx.jenkins.console;
+
+import hudson.Extension;
+import hudson.MarkupText;
+import hudson.Util;
+import hudson.console.ConsoleAnnotationDescriptor;
+import hudson.console.ConsoleAnnotator;
+import hudson.console.ConsoleNote;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Marks a line of the CLI output reporting the progress of a scan, so that the phase the scan is in stands out in
+ * the build log.
+ */
+public class ScanProgressNote extends ConsoleNote<Object> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String progress;
+
+    public ScanProgressNote(@Nonnull final String progress) {
+        this.progress = progress;
+    }
+
+    public String getProgress() {
+        return progress;
+    }
+
+    @Override
+    public ConsoleAnnotator<Object> annotate(Object context, MarkupText text, int charPos) {
+        text.addMarkup(0, text.length(),
+                "<span class=\"checkmarx-scan-progress\" style=\"font-weight: bold\">[Checkmarx: " + Util.escape(progress) + "] ",
+                "</span>");
+        return null;
+    }
+
+    @Extension
+    public static final class DescriptorImpl extends ConsoleAnnotationDescriptor {
+
+        @Nonnull
+        @Override
+        public String getDisplayName() {
+            return "Checkmarx scan progress";
+        }
+    }
+}
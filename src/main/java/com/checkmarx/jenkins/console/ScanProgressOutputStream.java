@@ -0,0 +1,92 @@
+package com.checkmarx.jenkins.console;
+
+import hudson.console.LineTransformationOutputStream;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Forwards the output of the CLI to the build log line by line as it comes, annotating the lines reporting the
+ * progress of the scan, the sources being uploaded, the scan being queued and running, with a
+ * {@link ScanProgressNote}. The lines themselves are forwarded unchanged. The ID of the scan is picked up as soon as
+ * the CLI prints it, so that the scan can be canceled while it runs.
+ */
+public class ScanProgressOutputStream extends LineTransformationOutputStream {
+
+    private static final Pattern UPLOADED = Pattern.compile("\\bupload(?:ed\\b|.*\\b(?:done|complete|completed|finished|succeeded)\\b)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern QUEUED = Pattern.compile("\\bstatus\\b.*\\bqueued\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern RUNNING = Pattern.compile("\\bstatus\\b.*\\brunning\\b(?:.*?(\\d{1,3})\\s*%)?", Pattern.CASE_INSENSITIVE);
+    private static final Pattern SCAN_ID = Pattern.compile("(?:\\bscan\\s*id|\"ID\")\\W*([0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12})\\b", Pattern.CASE_INSENSITIVE);
+
+    private final OutputStream out;
+    private volatile String scanId;
+
+    public ScanProgressOutputStream(@Nonnull final OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    protected void eol(byte[] b, int len) throws IOException {
+        final String line = new String(b, 0, len, UTF_8);
+        if (scanId == null) {
+            scanId = parseScanId(line);
+        }
+        final String progress = parseProgress(line);
+        if (progress != null) {
+            new ScanProgressNote(progress).encodeTo(out);
+        }
+        out.write(b, 0, len);
+    }
+
+    /**
+     * @return the ID of the scan, once the CLI printed it
+     */
+    @CheckForNull
+    public String getScanId() {
+        return scanId;
+    }
+
+    @CheckForNull
+    static String parseScanId(@Nonnull final String line) {
+        final Matcher matcher = SCAN_ID.matcher(line);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    /**
+     * @return the progress the line of output reports, or {@code null} when it does not report any
+     */
+    @CheckForNull
+    static String parseProgress(@Nonnull final String line) {
+        if (UPLOADED.matcher(line).find()) {
+            return "sources uploaded";
+        }
+        if (QUEUED.matcher(line).find()) {
+            return "scan queued";
+        }
+        final Matcher running = RUNNING.matcher(line);
+        if (running.find()) {
+            return running.group(1) != null ? "scan running, " + running.group(1) + "%" : "scan running";
+        }
+        return null;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Forwards the last line, even if it is not terminated, but leaves the build log open.
+     */
+    @Override
+    public void close() throws IOException {
+        forceEol();
+        out.flush();
+    }
+}
@@ -0,0 +1,66 @@
+package com.checkmarx.jenkins.credentials;
+
+import hudson.model.Item;
+import hudson.security.ACL;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.cloudbees.plugins.credentials.CredentialsProvider.lookupCredentials;
+
+/**
+ * Short lived cache of the {@link CheckmarxApiToken} credentials visible from an item, or from Jenkins itself, for
+ * the form validation and fill endpoints, which are called on every keystroke and page load. The lookups are always
+ * done as {@link ACL#SYSTEM}, the endpoints check the permissions of the user beforehand, so the item is the whole
+ * context of a lookup.
+ */
+public final class CredentialsLookupCache {
+
+    private static final long TTL_MILLIS = TimeUnit.SECONDS.toMillis(
+            SystemProperties.getLong(CredentialsLookupCache.class.getName() + ".ttlSeconds", 30L));
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    @Nonnull
+    public List<CheckmarxApiToken> lookup(@CheckForNull final Item item) {
+        final String key = item == null ? "" : item.getFullName();
+        final long now = System.currentTimeMillis();
+        entries.values().removeIf(entry -> entry.isExpired(now));
+
+        final Entry cached = entries.get(key);
+        if (cached != null) {
+            return cached.credentials;
+        }
+
+        final List<CheckmarxApiToken> credentials = Collections.unmodifiableList(item == null
+                ? lookupCredentials(CheckmarxApiToken.class, Jenkins.get(), ACL.SYSTEM, Collections.emptyList())
+                : lookupCredentials(CheckmarxApiToken.class, item, ACL.SYSTEM, Collections.emptyList()));
+        entries.put(key, new Entry(credentials, now));
+        return credentials;
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    private static final class Entry {
+        private final List<CheckmarxApiToken> credentials;
+        private final long createdAt;
+
+        private Entry(List<CheckmarxApiToken> credentials, long createdAt) {
+            this.credentials = credentials;
+            this.createdAt = createdAt;
+        }
+
+        private boolean isExpired(final long now) {
+            return now - createdAt >= TTL_MILLIS;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.checkmarx.jenkins.model;
+
+import com.checkmarx.jenkins.results.Finding;
+import lombok.Getter;
+import lombok.Setter;
+import org.apache.commons.lang.StringUtils;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Number of new, fixed and recurring findings of a build compared to its baseline build, by severity.
+ */
+@Getter
+public class FindingsDelta implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Map<String, Integer> newFindings = new HashMap<>();
+    private final Map<String, Integer> fixedFindings = new HashMap<>();
+    private final Map<String, Integer> recurringFindings = new HashMap<>();
+    private int unidentifiedCount;
+
+    @Setter
+    private String baselineBuild;
+    @Setter
+    private String baselineUrl;
+
+    public void addNew(String severity) {
+        newFindings.merge(severity, 1, Integer::sum);
+    }
+
+    public void addFixed(String severity) {
+        fixedFindings.merge(severity, 1, Integer::sum);
+    }
+
+    public void addRecurring(String severity) {
+        recurringFindings.merge(severity, 1, Integer::sum);
+    }
+
+    public void addUnidentified() {
+        unidentifiedCount++;
+    }
+
+    public int getNewCount() {
+        return count(newFindings);
+    }
+
+    public int getFixedCount() {
+        return count(fixedFindings);
+    }
+
+    public int getRecurringCount() {
+        return count(recurringFindings);
+    }
+
+    /**
+     * Short description of the delta, e.g. "3 new High, 1 new Low, 2 fixed, 40 recurring".
+     */
+    public String getSummary() {
+        final List<String> parts = new ArrayList<>();
+        newFindings.keySet().stream()
+                .sorted(Comparator.comparingInt(Finding::rank).thenComparing(Comparator.naturalOrder()))
+                .forEach(severity -> parts.add(newFindings.get(severity) + " new " + StringUtils.capitalize(severity.toLowerCase(Locale.ENGLISH))));
+        if (parts.isEmpty()) {
+            parts.add("no new findings");
+        }
+        parts.add(getFixedCount() + " fixed");
+        parts.add(getRecurringCount() + " recurring");
+        if (unidentifiedCount > 0) {
+            parts.add(unidentifiedCount + " without ID");
+        }
+        return String.join(", ", parts);
+    }
+
+    private static int count(Map<String, Integer> findings) {
+        return findings.values().stream().mapToInt(Integer::intValue).sum();
+    }
+}
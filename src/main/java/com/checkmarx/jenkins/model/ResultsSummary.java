@@ -0,0 +1,39 @@
+package com.checkmarx.jenkins.model;
+
+import com.checkmarx.jenkins.results.Finding;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts of the findings of a scan by severity and engine, along with the most severe of them.
+ */
+@Getter
+public class ResultsSummary implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Map<String, Integer> severityCounts = new HashMap<>();
+    private final Map<String, Integer> typeCounts = new HashMap<>();
+    private long total;
+
+    @Setter
+    private List<Finding> topFindings = new ArrayList<>();
+    @Setter
+    private int pages;
+
+    public void add(Finding finding) {
+        severityCounts.merge(finding.getSeverity(), 1, Integer::sum);
+        typeCounts.merge(String.valueOf(finding.getType()), 1, Integer::sum);
+        total++;
+    }
+
+    public int getCount(String severity) {
+        return severityCounts.getOrDefault(severity, 0);
+    }
+}
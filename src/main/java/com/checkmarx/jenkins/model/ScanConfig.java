@@ -5,6 +5,7 @@ import lombok.Getter;
 import lombok.Setter;
 
 import java.io.Serializable;
+import java.util.List;
 
 @Getter
 @Setter
@@ -15,9 +16,10 @@ public class ScanConfig implements Serializable {
     private String serverUrl;
     private String baseAuthUrl;
     private String tenantName;
-    private CheckmarxApiToken checkmarxToken;
+    private transient CheckmarxApiToken checkmarxToken;
     private String projectName;
     private String branchName;
     private String additionalOptions;
     private String sourceDirectory;
+    private List<String> reportFormats;
 }
@@ -0,0 +1,53 @@
+package com.checkmarx.jenkins.results;
+
+import lombok.Getter;
+
+import javax.annotation.CheckForNull;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A single result of a scan, limited to the fields needed to track it across builds and to list it.
+ */
+@Getter
+public class Finding implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private static final List<String> SEVERITIES = Arrays.asList("CRITICAL", "HIGH", "MEDIUM", "LOW", "INFO");
+
+    private final String type;
+    private final String id;
+    private final String similarityId;
+    private final String severity;
+    private final String description;
+
+    public Finding(String type, String id, String similarityId, String severity, String description) {
+        this.type = type;
+        this.id = id;
+        this.similarityId = similarityId;
+        this.severity = severity == null ? "UNKNOWN" : severity.toUpperCase(Locale.ENGLISH);
+        this.description = description;
+    }
+
+    /**
+     * Identifies the finding across scans. Similarity IDs are only unique per engine, and some engines do not set
+     * one, in which case the result ID is used instead.
+     *
+     * @return the key, or {@code null} when the finding has neither ID
+     */
+    @CheckForNull
+    public String getKey() {
+        final String findingId = similarityId != null ? similarityId : id;
+        return findingId != null ? type + ":" + findingId : null;
+    }
+
+    /**
+     * Orders severities from the most to the least severe, with unknown severities last.
+     */
+    public static int rank(String severity) {
+        final int rank = SEVERITIES.indexOf(severity);
+        return rank < 0 ? SEVERITIES.size() : rank;
+    }
+}
@@ -0,0 +1,119 @@
+package com.checkmarx.jenkins.results;
+
+import com.checkmarx.jenkins.model.FindingsDelta;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Findings of a build as sorted {@code key<TAB>severity} lines, which later builds compare their results to.
+ */
+public final class FindingsIndex {
+
+    private static final String FILE_PREFIX = "checkmarx-findings";
+    private static final int CHUNK_SIZE = 100_000;
+
+    private FindingsIndex() {
+        // squid:S1118
+    }
+
+    public static String getFileName(final String suffix) {
+        return FILE_PREFIX + suffix + ".gz";
+    }
+
+    /**
+     * Both sides are sorted on disk and merged, so memory does not grow with the number of findings. Findings without
+     * an ID cannot be followed across builds, they are left out of the index and counted apart in the delta.
+     *
+     * @return the delta to the baseline, or {@code null} without a baseline
+     */
+    @CheckForNull
+    public static FindingsDelta update(@Nonnull final InputStream results, @Nonnull final File indexFile, @CheckForNull final File baselineIndexFile) throws IOException {
+        return update(results, indexFile, baselineIndexFile, finding -> { });
+    }
+
+    /**
+     * Same as {@link #update(InputStream, File, File)}, also passing every result, duplicates included, to the consumer.
+     */
+    @CheckForNull
+    public static FindingsDelta update(@Nonnull final InputStream results, @Nonnull final File indexFile, @CheckForNull final File baselineIndexFile,
+                                       @Nonnull final ResultsParser.FindingConsumer consumer) throws IOException {
+        final File directory = indexFile.getAbsoluteFile().getParentFile();
+        final FindingsDelta delta = baselineIndexFile != null ? new FindingsDelta() : null;
+
+        try (KeySorter current = new KeySorter(directory, CHUNK_SIZE);
+             KeySorter baseline = new KeySorter(directory, CHUNK_SIZE)) {
+            ResultsParser.parse(results, finding -> {
+                final String key = finding.getKey();
+                if (key != null) {
+                    current.add(key, finding.getSeverity());
+                } else if (delta != null) {
+                    delta.addUnidentified();
+                }
+                consumer.accept(finding);
+            });
+            if (baselineIndexFile != null) {
+                // indexes written before they were sorted are still read correctly
+                read(baselineIndexFile, baseline::add);
+            }
+
+            final KeySorter.Entries ours = current.sorted();
+            final KeySorter.Entries theirs = baseline.sorted();
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(indexFile.toPath())), UTF_8))) {
+                KeySorter.Entry finding = ours.next();
+                KeySorter.Entry baselineFinding = theirs.next();
+                while (finding != null || baselineFinding != null) {
+                    final int order = finding == null ? 1 : baselineFinding == null ? -1 : finding.key.compareTo(baselineFinding.key);
+                    if (order <= 0) {
+                        writer.write(finding.key + "\t" + finding.severity + "\n");
+                    }
+                    if (delta != null) {
+                        if (order < 0) {
+                            delta.addNew(finding.severity);
+                        } else if (order == 0) {
+                            delta.addRecurring(finding.severity);
+                        } else {
+                            delta.addFixed(baselineFinding.severity);
+                        }
+                    }
+                    if (order <= 0) {
+                        finding = ours.next();
+                    }
+                    if (order >= 0) {
+                        baselineFinding = theirs.next();
+                    }
+                }
+            }
+        }
+        return delta;
+    }
+
+    private interface LineConsumer {
+        void accept(String key, String severity) throws IOException;
+    }
+
+    private static void read(final File indexFile, final LineConsumer consumer) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(Files.newInputStream(indexFile.toPath())), UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final int separator = line.lastIndexOf('\t');
+                if (separator > 0) {
+                    consumer.accept(line.substring(0, separator), line.substring(separator + 1));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.checkmarx.jenkins.results;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Sorts finding keys by spilling sorted chunks to disk and merging them, so that at most one chunk is in memory.
+ * Duplicate keys are merged, keeping the most severe severity.
+ */
+final class KeySorter implements Closeable {
+
+    private static final Comparator<Entry> BY_KEY = Comparator.comparing(entry -> entry.key);
+
+    private final File directory;
+    private final int chunkSize;
+    private final List<Entry> chunk = new ArrayList<>();
+    private final List<File> chunkFiles = new ArrayList<>();
+    private final List<ChunkReader> readers = new ArrayList<>();
+
+    KeySorter(@Nonnull final File directory, final int chunkSize) {
+        this.directory = directory;
+        this.chunkSize = chunkSize;
+    }
+
+    void add(@Nonnull final String key, @Nonnull final String severity) throws IOException {
+        chunk.add(new Entry(key, severity));
+        if (chunk.size() >= chunkSize) {
+            spill();
+        }
+    }
+
+    /**
+     * @return the distinct keys added so far, in order
+     */
+    Entries sorted() throws IOException {
+        spill();
+        final PriorityQueue<ChunkReader> queue = new PriorityQueue<>(Math.max(chunkFiles.size(), 1),
+                (a, b) -> BY_KEY.compare(a.current, b.current));
+        for (File file : chunkFiles) {
+            final ChunkReader reader = new ChunkReader(file);
+            readers.add(reader);
+            if (reader.advance()) {
+                queue.add(reader);
+            }
+        }
+        return new Entries(queue);
+    }
+
+    private void spill() throws IOException {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        chunk.sort(BY_KEY);
+        final File file = File.createTempFile("findings-", ".gz", directory);
+        chunkFiles.add(file);
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(file.toPath())), UTF_8))) {
+            for (Entry entry : chunk) {
+                writer.write(entry.key + "\t" + entry.severity + "\n");
+            }
+        }
+        chunk.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (ChunkReader reader : readers) {
+            reader.reader.close();
+        }
+        for (File file : chunkFiles) {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    static final class Entry {
+        final String key;
+        final String severity;
+
+        private Entry(String key, String severity) {
+            this.key = key;
+            this.severity = severity;
+        }
+    }
+
+    static final class Entries {
+        private final PriorityQueue<ChunkReader> queue;
+
+        private Entries(PriorityQueue<ChunkReader> queue) {
+            this.queue = queue;
+        }
+
+        /**
+         * @return the next distinct key, or {@code null} once all were read
+         */
+        @CheckForNull
+        Entry next() throws IOException {
+            final ChunkReader head = queue.poll();
+            if (head == null) {
+                return null;
+            }
+            final String key = head.current.key;
+            String severity = head.current.severity;
+            advance(head);
+            while (!queue.isEmpty() && queue.peek().current.key.equals(key)) {
+                final ChunkReader duplicate = queue.poll();
+                if (Finding.rank(duplicate.current.severity) < Finding.rank(severity)) {
+                    severity = duplicate.current.severity;
+                }
+                advance(duplicate);
+            }
+            return new Entry(key, severity);
+        }
+
+        private void advance(final ChunkReader reader) throws IOException {
+            if (reader.advance()) {
+                queue.add(reader);
+            }
+        }
+    }
+
+    private static final class ChunkReader {
+        private final BufferedReader reader;
+        private Entry current;
+
+        private ChunkReader(File file) throws IOException {
+            this.reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(Files.newInputStream(file.toPath())), UTF_8));
+        }
+
+        private boolean advance() throws IOException {
+            final String line = reader.readLine();
+            if (line == null) {
+                return false;
+            }
+            final int separator = line.lastIndexOf('\t');
+            current = new Entry(line.substring(0, separator), line.substring(separator + 1));
+            return true;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.checkmarx.jenkins.results;
+
+import com.checkmarx.jenkins.model.ResultsSummary;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Consumes the findings of a scan one at a time. Only the counts and the {@code topK} most severe findings are kept
+ * in memory, all the findings are written to gzipped pages of JSON lines, {@code page-00000.jsonl.gz} and so on, so
+ * the heap needed does not depend on the number of findings. The results page of the build serves them.
+ */
+public class ResultsIngester implements ResultsParser.FindingConsumer, Closeable {
+
+    public static final int DEFAULT_TOP_K = 20;
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final Comparator<Finding> LEAST_SEVERE_FIRST = Comparator.comparingInt((Finding f) -> Finding.rank(f.getSeverity())).reversed();
+
+    private final File pagesDir;
+    private final int topK;
+    private final int pageSize;
+    private final ResultsSummary summary = new ResultsSummary();
+    private final PriorityQueue<Finding> mostSevere;
+
+    private JsonGenerator page;
+    private int pageCount;
+    private int pageFill;
+
+    public ResultsIngester(@Nonnull final File pagesDir, final int topK, final int pageSize) {
+        this.pagesDir = pagesDir;
+        this.topK = topK;
+        this.pageSize = pageSize;
+        this.mostSevere = new PriorityQueue<>(topK + 1, LEAST_SEVERE_FIRST);
+    }
+
+    @Override
+    public void accept(final Finding finding) throws IOException {
+        summary.add(finding);
+
+        if (mostSevere.size() < topK) {
+            mostSevere.add(finding);
+        } else if (topK > 0 && LEAST_SEVERE_FIRST.compare(finding, mostSevere.peek()) > 0) {
+            mostSevere.poll();
+            mostSevere.add(finding);
+        }
+
+        if (page == null) {
+            openPage();
+        }
+        page.writeStartObject();
+        page.writeStringField("type", finding.getType());
+        page.writeStringField("id", finding.getId());
+        page.writeStringField("similarityId", finding.getSimilarityId());
+        page.writeStringField("severity", finding.getSeverity());
+        page.writeStringField("description", finding.getDescription());
+        page.writeEndObject();
+        if (++pageFill == pageSize) {
+            closePage();
+        }
+    }
+
+    public static String getPageFileName(final int page) {
+        return String.format("page-%05d.jsonl.gz", page);
+    }
+
+    /**
+     * The summary of the findings consumed so far, with the most severe findings first.
+     */
+    public ResultsSummary getSummary() {
+        final List<Finding> top = new ArrayList<>(mostSevere);
+        top.sort(LEAST_SEVERE_FIRST.reversed());
+        summary.setTopFindings(top);
+        summary.setPages(pageCount);
+        return summary;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closePage();
+    }
+
+    private void openPage() throws IOException {
+        if (pageCount == 0 && !pagesDir.isDirectory() && !pagesDir.mkdirs()) {
+            throw new IOException("Could not create " + pagesDir);
+        }
+        final File file = new File(pagesDir, getPageFileName(pageCount));
+        page = JSON_FACTORY.createGenerator(new GZIPOutputStream(Files.newOutputStream(file.toPath())));
+        page.setRootValueSeparator(new SerializedString("\n"));
+        pageCount++;
+        pageFill = 0;
+    }
+
+    private void closePage() throws IOException {
+        if (page != null) {
+            page.writeRaw('\n');
+            page.close();
+            page = null;
+        }
+    }
+}
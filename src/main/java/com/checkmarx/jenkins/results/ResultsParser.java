@@ -0,0 +1,75 @@
+package com.checkmarx.jenkins.results;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Streams the findings of the JSON report of the CLI, one at a time.
+ */
+public final class ResultsParser {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private ResultsParser() {
+        // squid:S1118
+    }
+
+    public interface FindingConsumer {
+        void accept(Finding finding) throws IOException;
+    }
+
+    public static void parse(@Nonnull final InputStream results, @Nonnull final FindingConsumer consumer) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(results)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Unexpected format of the scan results");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = parser.getCurrentName();
+                if (parser.nextToken() == JsonToken.START_ARRAY && "results".equals(field)) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        consumer.accept(readFinding(parser));
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    private static Finding readFinding(final JsonParser parser) throws IOException {
+        String type = null;
+        String id = null;
+        String similarityId = null;
+        String severity = null;
+        String description = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "type":
+                    type = parser.getValueAsString();
+                    break;
+                case "id":
+                    id = parser.getValueAsString();
+                    break;
+                case "similarityId":
+                    similarityId = parser.getValueAsString();
+                    break;
+                case "severity":
+                    severity = parser.getValueAsString();
+                    break;
+                case "description":
+                    description = parser.getValueAsString();
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return new Finding(type, id, similarityId, severity, description);
+    }
+}
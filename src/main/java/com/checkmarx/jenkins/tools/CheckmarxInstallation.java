@@ -26,11 +26,18 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 
 import static java.lang.String.format;
 
 public class CheckmarxInstallation extends ToolInstallation implements EnvironmentSpecific<CheckmarxInstallation>, NodeSpecific<CheckmarxInstallation> {
 
+    /**
+     * Executable resolved on the node this installation was translated for, kept as long as the translation is
+     * cached by {@link NodeInstallationCache}.
+     */
+    private transient volatile String checkmarxExecutable;
+
     @DataBoundConstructor
     public CheckmarxInstallation(@Nonnull final String name, @Nonnull final String home, final List<? extends ToolProperty<?>> properties) {
         super(name, home, properties);
@@ -38,25 +45,34 @@ public class CheckmarxInstallation extends ToolInstallation implements Environme
 
     @Override
     public CheckmarxInstallation forEnvironment(final EnvVars envVars) {
-        return new CheckmarxInstallation(this.getName(), envVars.expand(this.getHome()), this.getProperties().toList());
+        final String home = envVars.expand(this.getHome());
+        if (Objects.equals(home, this.getHome())) {
+            return this;
+        }
+        return new CheckmarxInstallation(this.getName(), home, this.getProperties().toList());
     }
 
     @Override
     public CheckmarxInstallation forNode(@NonNull final Node node, final TaskListener taskListener) throws IOException, InterruptedException {
-        return new CheckmarxInstallation(this.getName(), this.translateFor(node, taskListener), this.getProperties().toList());
+        return NodeInstallationCache.forNode(this, node, taskListener);
     }
 
 
     public String getCheckmarxExecutable(@Nonnull final Launcher launcher) throws IOException, InterruptedException {
         if (this.getProperties().size() == 0) return this.getHome();
 
+        if (this.checkmarxExecutable != null) return this.checkmarxExecutable;
+
         final VirtualChannel channel = launcher.getChannel();
-        return channel == null ? null : channel.call(new MasterToSlaveCallable<String, IOException>() {
+        if (channel == null) return null;
+
+        this.checkmarxExecutable = channel.call(new MasterToSlaveCallable<String, IOException>() {
             @Override
             public String call() throws IOException {
                 return CheckmarxInstallation.this.resolveExecutable(Platform.current());
             }
         });
+        return this.checkmarxExecutable;
     }
 
     private String resolveExecutable(final Platform platform) throws IOException {
@@ -5,6 +5,7 @@ import com.checkmarx.jenkins.tools.internal.DownloadService;
 import hudson.Extension;
 import hudson.FilePath;
 import hudson.Functions;
+import hudson.Util;
 import hudson.model.Node;
 import hudson.model.TaskListener;
 import hudson.remoting.VirtualChannel;
@@ -22,12 +23,23 @@ import org.apache.commons.compress.compressors.CompressorStreamFactory;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CountingOutputStream;
 import org.apache.commons.lang.StringUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 
 import java.io.*;
+import java.net.HttpURLConnection;
 import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import static hudson.Util.fixEmptyAndTrim;
@@ -40,8 +52,18 @@ public class CheckmarxInstaller extends ToolInstaller {
 
     private static final String INSTALLED_FROM = ".installedFrom";
     private static final String TIMESTAMP_FILE = ".timestamp";
+    private static final String INSTALLED_VERSION = ".installedVersion";
+    private static final long DEFAULT_UPDATE_POLICY_INTERVAL_HOURS = 24;
+    private static final String PARTIAL_SUFFIX = ".part";
+    private static final int DEFAULT_TIMEOUT_SECONDS = 10;
     private final String version;
     private final Long updatePolicyIntervalHours;
+    private String mirrorUrl;
+    private Integer connectTimeoutSeconds;
+    private Integer readTimeoutSeconds;
+    private Integer retainedArchives;
+    private String sharedInstallPath;
+    private String sharedInstallSha256;
     private CxLoggerAdapter log;
 
     @DataBoundConstructor
@@ -55,18 +77,59 @@ public class CheckmarxInstaller extends ToolInstaller {
     public FilePath performInstallation(ToolInstallation toolInstallation, Node node, TaskListener taskListener) throws IOException, InterruptedException {
         log = new CxLoggerAdapter(taskListener.getLogger());
 
-        FilePath expected = preferredLocation(toolInstallation, node);
+        final VirtualChannel nodeChannel = node.getChannel();
+        if (nodeChannel == null) {
+            throw new IOException(format("Node '%s' is offline", node.getDisplayName()));
+        }
+
+        // every architecture gets its own directory, so tool locations shared between agents never mix binaries
+        Platform platform = nodeChannel.call(new GetPlatform(node.getDisplayName()));
+        String requestedVersion = fixEmptyAndTrim(version) != null ? version.trim() : "latest";
+
+        if (sharedInstallPath != null) {
+            SharedInstallProbeResult probe = nodeChannel.call(new SharedInstallProbe(sharedInstallPath, platform.checkmarxWrapperFileName,
+                    "latest".equals(requestedVersion) ? null : requestedVersion, sharedInstallSha256));
+            if (probe.valid) {
+                log.info("Using the pre-provisioned Checkmarx AST CLI tool at " + sharedInstallPath + " (version '" + probe.version + "')");
+                return new FilePath(nodeChannel, sharedInstallPath);
+            }
+            log.info("Ignoring the pre-provisioned Checkmarx AST CLI tool at " + sharedInstallPath + ": " + probe.reason);
+        }
 
-        if (isUpToDate(expected, log)) {
+        FilePath expected = preferredLocation(toolInstallation, node).child(platform.id);
+
+        // "latest" is snapshotted on the controller, so all nodes installing within an update interval get the same tag;
+        // a local mirror is read on the node itself, as the controller may not see the same directory
+        final boolean localMirror = DownloadService.isLocalMirror(mirrorUrl);
+        String tagName;
+        try {
+            final ResolveVersion resolveVersion = new ResolveVersion(requestedVersion, mirrorUrl, getUpdatePolicyIntervalMillis(),
+                    (int) TimeUnit.SECONDS.toMillis(getConnectTimeoutSeconds()), (int) TimeUnit.SECONDS.toMillis(getReadTimeoutSeconds()));
+            tagName = localMirror ? nodeChannel.call(resolveVersion) : resolveVersion.call();
+        } catch (IOException ex) {
+            FilePath installedVersion = expected.child(INSTALLED_VERSION);
+            if (!installedVersion.exists()) {
+                throw ex;
+            }
+            tagName = StringUtils.chomp(installedVersion.readToString());
+            log.warn("Could not resolve version '" + requestedVersion + "', keeping the installed version '" + tagName + "': " + ex.getMessage());
+        }
+
+        if (isUpToDate(expected, tagName, log)) {
             log.info("Checkmarx installation is UP-TO-DATE");
             return expected;
         }
-        log.info("Installing Checkmarx AST CLI tool (version '" + fixEmptyAndTrim(version) + "')");
+        log.info("Installing Checkmarx AST CLI tool (version '" + tagName + "', platform '" + platform.id + "')");
 
-        return installCheckmarxCliAsSingleBinary(expected, node, taskListener);
+        return installCheckmarxCliAsSingleBinary(expected, node, nodeChannel, platform, tagName, localMirror, taskListener);
     }
 
-    private boolean isUpToDate(FilePath expectedLocation, CxLoggerAdapter log) throws IOException, InterruptedException {
+    private boolean isUpToDate(FilePath expectedLocation, String tagName, CxLoggerAdapter log) throws IOException, InterruptedException {
+        FilePath installedVersion = expectedLocation.child(INSTALLED_VERSION);
+        if (installedVersion.exists() && expectedLocation.child(TIMESTAMP_FILE).exists()) {
+            return tagName.equals(StringUtils.chomp(installedVersion.readToString()));
+        }
+
         FilePath marker = expectedLocation.child(TIMESTAMP_FILE);
         if (!marker.exists()) {
             return false;
@@ -87,34 +150,41 @@ public class CheckmarxInstaller extends ToolInstaller {
         if (timestampDifference <= 0) {
             return true;
         }
-        long updateInterval = TimeUnit.HOURS.toMillis(updatePolicyIntervalHours);
-        return timestampDifference < updateInterval;
+        return timestampDifference < getUpdatePolicyIntervalMillis();
     }
 
-    private FilePath installCheckmarxCliAsSingleBinary(FilePath expected, Node node, TaskListener log) throws IOException, InterruptedException {
-        final VirtualChannel nodeChannel = node.getChannel();
-        if (nodeChannel == null) {
-            throw new IOException(format("Node '%s' is offline", node.getDisplayName()));
-        }
-
-        Platform platform = nodeChannel.call(new GetPlatform(node.getDisplayName()));
-
+    private FilePath installCheckmarxCliAsSingleBinary(FilePath expected, Node node, VirtualChannel nodeChannel, Platform platform, String tagName, boolean localMirror, TaskListener log) throws IOException, InterruptedException {
         try {
-            URL checkmarxDownloadUrl = DownloadService.getDownloadUrlForCli(version, platform);
+            GetDownloadUrl getDownloadUrl = new GetDownloadUrl(tagName, platform, mirrorUrl,
+                    (int) TimeUnit.SECONDS.toMillis(getConnectTimeoutSeconds()), (int) TimeUnit.SECONDS.toMillis(getReadTimeoutSeconds()));
+            URL checkmarxDownloadUrl = localMirror ? nodeChannel.call(getDownloadUrl) : getDownloadUrl.call();
 
             expected.mkdirs();
-            nodeChannel.call(new Downloader(checkmarxDownloadUrl,
-                    expected.child(DownloadService.buildFileName(version, platform)),
-                    expected.child(platform.checkmarxWrapperFileName)
+            DownloadStatistics statistics = nodeChannel.call(new Downloader(checkmarxDownloadUrl,
+                    expected.child(DownloadService.buildFileName(tagName, platform)),
+                    expected.child(platform.checkmarxWrapperFileName),
+                    (int) TimeUnit.SECONDS.toMillis(getConnectTimeoutSeconds()),
+                    (int) TimeUnit.SECONDS.toMillis(getReadTimeoutSeconds())
             ));
+            this.log.info(statistics.toString());
 
             expected.child(INSTALLED_FROM).write(checkmarxDownloadUrl.toString(), UTF_8.name());
+            expected.child(INSTALLED_VERSION).write(tagName, UTF_8.name());
             expected.child(TIMESTAMP_FILE).write(valueOf(Instant.now().toEpochMilli()), UTF_8.name());
         } catch (Exception ex) {
             log.getLogger().println("Checkmarx Security tool could not installed: " + ex.getMessage());
             throw new ToolDetectionException("Could not install Checkmarx CLI from binary", ex);
         }
 
+        try {
+            ArchivePruneResult pruned = nodeChannel.call(new ArchivePruner(expected, getRetainedArchives()));
+            if (pruned.removedFiles > 0) {
+                this.log.info(pruned.toString());
+            }
+        } catch (IOException ex) {
+            this.log.warn("Could not remove stale CLI archives: " + ex.getMessage());
+        }
+
         return expected;
     }
 
@@ -126,6 +196,64 @@ public class CheckmarxInstaller extends ToolInstaller {
         return updatePolicyIntervalHours;
     }
 
+    private long getUpdatePolicyIntervalMillis() {
+        return TimeUnit.HOURS.toMillis(updatePolicyIntervalHours != null ? updatePolicyIntervalHours : DEFAULT_UPDATE_POLICY_INTERVAL_HOURS);
+    }
+
+    public String getMirrorUrl() {
+        return mirrorUrl;
+    }
+
+    @DataBoundSetter
+    public void setMirrorUrl(String mirrorUrl) {
+        this.mirrorUrl = fixEmptyAndTrim(mirrorUrl);
+    }
+
+    public int getConnectTimeoutSeconds() {
+        return connectTimeoutSeconds != null && connectTimeoutSeconds > 0 ? connectTimeoutSeconds : DEFAULT_TIMEOUT_SECONDS;
+    }
+
+    @DataBoundSetter
+    public void setConnectTimeoutSeconds(Integer connectTimeoutSeconds) {
+        this.connectTimeoutSeconds = connectTimeoutSeconds;
+    }
+
+    public int getReadTimeoutSeconds() {
+        return readTimeoutSeconds != null && readTimeoutSeconds > 0 ? readTimeoutSeconds : DEFAULT_TIMEOUT_SECONDS;
+    }
+
+    @DataBoundSetter
+    public void setReadTimeoutSeconds(Integer readTimeoutSeconds) {
+        this.readTimeoutSeconds = readTimeoutSeconds;
+    }
+
+    public String getSharedInstallPath() {
+        return sharedInstallPath;
+    }
+
+    @DataBoundSetter
+    public void setSharedInstallPath(String sharedInstallPath) {
+        this.sharedInstallPath = fixEmptyAndTrim(sharedInstallPath);
+    }
+
+    public String getSharedInstallSha256() {
+        return sharedInstallSha256;
+    }
+
+    @DataBoundSetter
+    public void setSharedInstallSha256(String sharedInstallSha256) {
+        this.sharedInstallSha256 = fixEmptyAndTrim(sharedInstallSha256);
+    }
+
+    public int getRetainedArchives() {
+        return retainedArchives != null && retainedArchives > 0 ? retainedArchives : 0;
+    }
+
+    @DataBoundSetter
+    public void setRetainedArchives(Integer retainedArchives) {
+        this.retainedArchives = retainedArchives;
+    }
+
     @Extension
     public static final class CheckmarxInstallerDescriptor extends ToolInstallerDescriptor<CheckmarxInstaller> {
 
@@ -154,28 +282,273 @@ public class CheckmarxInstaller extends ToolInstaller {
             try {
                 return Platform.current();
             } catch (ToolDetectionException ex) {
-                throw new IOException(format("Could not determine platform on node %s", nodeDisplayName));
+                throw new IOException(format("Could not determine platform on node %s: %s", nodeDisplayName, ex.getMessage()));
+            }
+        }
+    }
+
+    private static class ResolveVersion extends MasterToSlaveCallable<String, IOException> {
+        private static final long serialVersionUID = 1L;
+
+        private final String version;
+        private final String mirror;
+        private final long maxAgeMillis;
+        private final int connectTimeoutMillis;
+        private final int readTimeoutMillis;
+
+        ResolveVersion(String version, String mirror, long maxAgeMillis, int connectTimeoutMillis, int readTimeoutMillis) {
+            this.version = version;
+            this.mirror = mirror;
+            this.maxAgeMillis = maxAgeMillis;
+            this.connectTimeoutMillis = connectTimeoutMillis;
+            this.readTimeoutMillis = readTimeoutMillis;
+        }
+
+        @Override
+        public String call() throws IOException {
+            return DownloadService.resolveVersion(version, mirror, maxAgeMillis, connectTimeoutMillis, readTimeoutMillis);
+        }
+    }
+
+    private static class GetDownloadUrl extends MasterToSlaveCallable<URL, IOException> {
+        private static final long serialVersionUID = 1L;
+
+        private final String tagName;
+        private final Platform platform;
+        private final String mirror;
+        private final int connectTimeoutMillis;
+        private final int readTimeoutMillis;
+
+        GetDownloadUrl(String tagName, Platform platform, String mirror, int connectTimeoutMillis, int readTimeoutMillis) {
+            this.tagName = tagName;
+            this.platform = platform;
+            this.mirror = mirror;
+            this.connectTimeoutMillis = connectTimeoutMillis;
+            this.readTimeoutMillis = readTimeoutMillis;
+        }
+
+        @Override
+        public URL call() throws IOException {
+            return DownloadService.getDownloadUrlForCli(tagName, platform, mirror, connectTimeoutMillis, readTimeoutMillis);
+        }
+    }
+
+    private static class DownloadStatistics implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final long transferredBytes;
+        private final long resumedAtBytes;
+        private final long elapsedMillis;
+
+        DownloadStatistics(long transferredBytes, long resumedAtBytes, long elapsedMillis) {
+            this.transferredBytes = transferredBytes;
+            this.resumedAtBytes = resumedAtBytes;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            final long bytesPerSecond = transferredBytes * 1000 / Math.max(elapsedMillis, 1);
+            return format("Downloaded %s in %.1f s (%s/s)%s",
+                    Functions.humanReadableByteSize(transferredBytes),
+                    elapsedMillis / 1000.0,
+                    Functions.humanReadableByteSize(bytesPerSecond),
+                    resumedAtBytes > 0 ? ", resumed at " + Functions.humanReadableByteSize(resumedAtBytes) : "");
+        }
+    }
+
+    private static class SharedInstallProbeResult implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final boolean valid;
+        private final String version;
+        private final String reason;
+
+        SharedInstallProbeResult(boolean valid, String version, String reason) {
+            this.valid = valid;
+            this.version = version;
+            this.reason = reason;
+        }
+    }
+
+    /**
+     * Validates a CLI provisioned on the node ahead of time, e.g. baked into a container image or on a mounted
+     * volume. The location is only read, so it may live on a read-only file system.
+     */
+    private static class SharedInstallProbe extends MasterToSlaveCallable<SharedInstallProbeResult, IOException> {
+        private static final long serialVersionUID = 1L;
+        private static final long VERSION_TIMEOUT_SECONDS = 30;
+
+        private final String path;
+        private final String wrapperFileName;
+        private final String expectedVersion;
+        private final String expectedSha256;
+
+        SharedInstallProbe(String path, String wrapperFileName, String expectedVersion, String expectedSha256) {
+            this.path = path;
+            this.wrapperFileName = wrapperFileName;
+            this.expectedVersion = expectedVersion;
+            this.expectedSha256 = expectedSha256;
+        }
+
+        @Override
+        public SharedInstallProbeResult call() throws IOException {
+            final File executable = new File(path, wrapperFileName);
+            if (!executable.isFile() || !executable.canExecute()) {
+                return new SharedInstallProbeResult(false, null, format("%s is missing or not executable", executable));
+            }
+
+            if (expectedSha256 != null) {
+                final String sha256 = sha256(executable);
+                if (!sha256.equalsIgnoreCase(expectedSha256)) {
+                    return new SharedInstallProbeResult(false, null, format("SHA-256 of %s is %s", executable, sha256));
+                }
+            }
+
+            final String installedVersion = readVersion(executable);
+            if (installedVersion == null) {
+                return new SharedInstallProbeResult(false, null, format("could not read the version of %s", executable));
+            }
+            if (expectedVersion != null && !StringUtils.removeStart(installedVersion, "v").equals(StringUtils.removeStart(expectedVersion, "v"))) {
+                return new SharedInstallProbeResult(false, installedVersion, format("version %s does not match %s", installedVersion, expectedVersion));
+            }
+            return new SharedInstallProbeResult(true, installedVersion, null);
+        }
+
+        private static String sha256(final File file) throws IOException {
+            try (InputStream in = new FileInputStream(file)) {
+                final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                final byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                }
+                return Util.toHexString(digest.digest());
+            } catch (NoSuchAlgorithmException e) {
+                throw new IOException(e);
+            }
+        }
+
+        private static String readVersion(final File executable) throws IOException {
+            // the output goes to a file, so a CLI that hangs with its output open cannot block past the timeout
+            final File output = File.createTempFile("cx-version", ".txt");
+            final Process process = new ProcessBuilder(executable.getAbsolutePath(), "version")
+                    .redirectErrorStream(true).redirectOutput(output).start();
+            try {
+                if (!process.waitFor(VERSION_TIMEOUT_SECONDS, TimeUnit.SECONDS) || process.exitValue() != 0) {
+                    return null;
+                }
+                return fixEmptyAndTrim(FileUtils.readFileToString(output, UTF_8));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } finally {
+                process.destroyForcibly();
+                Files.deleteIfExists(output.toPath());
             }
         }
     }
 
-    private static class Downloader extends MasterToSlaveCallable<Void, IOException> {
+    private static class ArchivePruneResult implements Serializable {
         private static final long serialVersionUID = 1L;
 
+        private final int removedFiles;
+        private final long reclaimedBytes;
+
+        ArchivePruneResult(int removedFiles, long reclaimedBytes) {
+            this.removedFiles = removedFiles;
+            this.reclaimedBytes = reclaimedBytes;
+        }
+
+        @Override
+        public String toString() {
+            return format("Removed %d stale CLI archive(s), reclaimed %s", removedFiles, Functions.humanReadableByteSize(reclaimedBytes));
+        }
+    }
+
+    /**
+     * Removes the downloaded CLI archives of an installation, keeping the most recent ones if asked to. Archives left
+     * in the parent directory by installations predating the per-platform layout are removed as well.
+     */
+    private static class ArchivePruner extends MasterToSlaveCallable<ArchivePruneResult, IOException> {
+        private static final long serialVersionUID = 1L;
+        private static final String ARCHIVE_PREFIX = "ast-cli_";
+
+        private final FilePath installDirectory;
+        private final int retainedArchives;
+
+        ArchivePruner(FilePath installDirectory, int retainedArchives) {
+            this.installDirectory = installDirectory;
+            this.retainedArchives = retainedArchives;
+        }
+
+        @Override
+        public ArchivePruneResult call() throws IOException {
+            final File directory = new File(installDirectory.getRemote());
+            final List<File> archives = new ArrayList<>();
+            collectArchives(directory, archives);
+            collectArchives(directory.getParentFile(), archives);
+            archives.sort(Comparator.comparingLong(File::lastModified).reversed());
+
+            int kept = 0;
+            int removedFiles = 0;
+            long reclaimedBytes = 0;
+            for (File archive : archives) {
+                final boolean partial = archive.getName().endsWith(PARTIAL_SUFFIX);
+                if (!partial && archive.getParentFile().equals(directory) && kept < retainedArchives) {
+                    kept++;
+                    continue;
+                }
+                final long length = archive.length();
+                if (archive.delete()) {
+                    removedFiles++;
+                    reclaimedBytes += length;
+                }
+            }
+            return new ArchivePruneResult(removedFiles, reclaimedBytes);
+        }
+
+        private static void collectArchives(final File directory, final List<File> archives) {
+            final File[] files = directory == null ? null : directory.listFiles((dir, name) -> name.startsWith(ARCHIVE_PREFIX));
+            if (files != null) {
+                for (File file : files) {
+                    if (file.isFile()) {
+                        archives.add(file);
+                    }
+                }
+            }
+        }
+    }
+
+    static class Downloader extends MasterToSlaveCallable<DownloadStatistics, IOException> {
+        private static final long serialVersionUID = 1L;
+        private static final int MAX_ATTEMPTS = 3;
+        private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
         private final URL downloadUrl;
         private final FilePath output;
         private final FilePath executableFile;
+        private final int connectTimeoutMillis;
+        private final int readTimeoutMillis;
+        private transient long transferredBytes;
 
-        Downloader(URL downloadUrl, FilePath output, FilePath executableFile) {
+        Downloader(URL downloadUrl, FilePath output, FilePath executableFile, int connectTimeoutMillis, int readTimeoutMillis) {
             this.downloadUrl = downloadUrl;
             this.output = output;
             this.executableFile = executableFile;
+            this.connectTimeoutMillis = connectTimeoutMillis;
+            this.readTimeoutMillis = readTimeoutMillis;
         }
 
         @Override
-        public Void call() throws IOException {
+        public DownloadStatistics call() throws IOException {
             final File downloadedFile = new File(output.getRemote());
-            FileUtils.copyURLToFile(downloadUrl, downloadedFile, 10000, 10000);
+            final File partialFile = new File(downloadedFile.getPath() + PARTIAL_SUFFIX);
+            final long resumedAtBytes = partialFile.length();
+            final long start = System.currentTimeMillis();
+            final DownloadStatistics statistics = new DownloadStatistics(downloadWithRetries(partialFile), resumedAtBytes, System.currentTimeMillis() - start);
+
+            Files.move(partialFile.toPath(), downloadedFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
 
             try {
                 extract(downloadedFile.getAbsolutePath(), downloadedFile.getParent());
@@ -192,7 +565,77 @@ public class CheckmarxInstaller extends ToolInstaller {
                     throw new IOException(format("Could not set executable flag for the file: %s", downloadedFile.getAbsolutePath()));
                 }
             }
-            return null;
+            return statistics;
+        }
+
+        /**
+         * @return the number of bytes transferred by all the attempts
+         */
+        long downloadWithRetries(final File partialFile) throws IOException {
+            transferredBytes = 0;
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    download(partialFile);
+                    return transferredBytes;
+                } catch (IOException e) {
+                    // the partial file is kept, so the next attempt (or the next build) resumes where this one stopped
+                    if (attempt >= MAX_ATTEMPTS) {
+                        throw e;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Downloads the remaining part of the file, appending to what previous attempts already downloaded when the
+         * server supports range requests.
+         */
+        void download(final File partialFile) throws IOException {
+            final long offset = partialFile.length();
+            final URLConnection connection = downloadUrl.openConnection();
+            connection.setConnectTimeout(connectTimeoutMillis);
+            connection.setReadTimeout(readTimeoutMillis);
+
+            boolean append = false;
+            if (connection instanceof HttpURLConnection) {
+                final HttpURLConnection http = (HttpURLConnection) connection;
+                if (offset > 0) {
+                    http.setRequestProperty("Range", "bytes=" + offset + "-");
+                }
+
+                final int status = http.getResponseCode();
+                if (status == HTTP_RANGE_NOT_SATISFIABLE && offset > 0) {
+                    // the previous attempt already downloaded the whole file
+                    http.disconnect();
+                    return;
+                }
+                if (status == HttpURLConnection.HTTP_PARTIAL) {
+                    final String contentRange = http.getHeaderField("Content-Range");
+                    if (contentRange == null || !contentRange.startsWith("bytes " + offset + "-")) {
+                        http.disconnect();
+                        Files.deleteIfExists(partialFile.toPath());
+                        throw new IOException(format("Unexpected content range <%s> from <%s>", contentRange, downloadUrl));
+                    }
+                    append = true;
+                } else if (status != HttpURLConnection.HTTP_OK) {
+                    http.disconnect();
+                    throw new IOException(format("Unexpected response %d from <%s>", status, downloadUrl));
+                }
+            }
+
+            try (InputStream in = connection.getInputStream();
+                 CountingOutputStream out = new CountingOutputStream(new FileOutputStream(partialFile, append))) {
+                try {
+                    IOUtils.copyLarge(in, out);
+                } finally {
+                    transferredBytes += out.getByteCount();
+                }
+                // a dropped connection may just look like the end of the file
+                final long expectedBytes = connection.getContentLengthLong();
+                if (expectedBytes >= 0 && out.getByteCount() != expectedBytes) {
+                    throw new IOException(format("Received %d of %d bytes from <%s>", out.getByteCount(), expectedBytes, downloadUrl));
+                }
+            }
         }
 
         public static void extract(String srcFile, String dest) throws ArchiveException, IOException, CompressorException {
@@ -0,0 +1,106 @@
+package com.checkmarx.jenkins.tools;
+
+import hudson.Extension;
+import hudson.model.Computer;
+import hudson.model.Node;
+import hudson.model.TaskListener;
+import hudson.slaves.ComputerListener;
+import hudson.slaves.OfflineCause;
+import jenkins.util.SystemProperties;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Node specific translations of the {@link CheckmarxInstallation}s. A cached translation skips the installers, so
+ * their update policy, the resolution of "latest" and the shared install check only run again once the entry
+ * expires, after {@code ttlMinutes}. Entries are also dropped when the installations are saved or the node reconnects.
+ */
+public final class NodeInstallationCache {
+
+    private static final long TTL_MILLIS = TimeUnit.MINUTES.toMillis(
+            SystemProperties.getLong(NodeInstallationCache.class.getName() + ".ttlMinutes", 15L));
+
+    private static final ConcurrentMap<Key, Entry> ENTRIES = new ConcurrentHashMap<>();
+
+    private NodeInstallationCache() {
+        // squid:S1118
+    }
+
+    static CheckmarxInstallation forNode(@Nonnull final CheckmarxInstallation installation, @Nonnull final Node node, final TaskListener taskListener) throws IOException, InterruptedException {
+        final Key key = new Key(node.getNodeName(), installation.getName());
+        final long now = System.currentTimeMillis();
+
+        final Entry cached = ENTRIES.get(key);
+        if (cached != null && Objects.equals(cached.home, installation.getHome()) && now - cached.createdAt < TTL_MILLIS) {
+            return cached.installation;
+        }
+
+        final CheckmarxInstallation translated = new CheckmarxInstallation(installation.getName(),
+                installation.translateFor(node, taskListener), installation.getProperties().toList());
+        ENTRIES.put(key, new Entry(installation.getHome(), translated, now));
+        return translated;
+    }
+
+    public static void invalidateAll() {
+        ENTRIES.clear();
+    }
+
+    static void invalidate(@Nonnull final String nodeName) {
+        ENTRIES.keySet().removeIf(key -> key.nodeName.equals(nodeName));
+    }
+
+    private static final class Key {
+        private final String nodeName;
+        private final String installationName;
+
+        private Key(String nodeName, String installationName) {
+            this.nodeName = nodeName;
+            this.installationName = installationName;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return nodeName.equals(key.nodeName) && installationName.equals(key.installationName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(nodeName, installationName);
+        }
+    }
+
+    private static final class Entry {
+        private final String home;
+        private final CheckmarxInstallation installation;
+        private final long createdAt;
+
+        private Entry(String home, CheckmarxInstallation installation, long createdAt) {
+            this.home = home;
+            this.installation = installation;
+            this.createdAt = createdAt;
+        }
+    }
+
+    @Extension
+    public static class Invalidator extends ComputerListener {
+
+        @Override
+        public void onOnline(Computer c, TaskListener listener) {
+            invalidate(c.getName());
+        }
+
+        @Override
+        public void onOffline(@Nonnull Computer c, @CheckForNull OfflineCause cause) {
+            invalidate(c.getName());
+        }
+    }
+}
@@ -5,15 +5,23 @@ import java.util.Locale;
 import java.util.Map;
 
 public enum Platform {
-    LINUX( "linux_x64.tar.gz", "cx"),
-    MAC_OS( "darwin_x64.tar.gz", "cx"),
-    WINDOWS( "windows_x64.zip", "cx.exe");
+    LINUX("linux", "x64", "tar.gz", "cx"),
+    LINUX_ARM64("linux", "arm64", "tar.gz", "cx"),
+    LINUX_ARMV6("linux", "armv6", "tar.gz", "cx"),
+    MAC_OS("darwin", "x64", "tar.gz", "cx"),
+    MAC_OS_ARM64("darwin", "arm64", "tar.gz", "cx"),
+    WINDOWS("windows", "x64", "zip", "cx.exe");
 
+    /**
+     * Operating system and architecture of the CLI release asset, e.g. {@code linux_arm64}.
+     */
+    public final String id;
     public final String packageExtension;
     public final String checkmarxWrapperFileName;
 
-    Platform(final String packageExtension, final String checkmarxWrapperFileName) {
-        this.packageExtension = packageExtension;
+    Platform(final String os, final String arch, final String archiveType, final String checkmarxWrapperFileName) {
+        this.id = os + "_" + arch;
+        this.packageExtension = this.id + "." + archiveType;
         this.checkmarxWrapperFileName = checkmarxWrapperFileName;
     }
 
@@ -23,15 +31,47 @@ public enum Platform {
     }
 
     @Nonnull
-    private static Platform detect(@Nonnull final Map<Object, Object> systemProperties) throws ToolDetectionException {
-        final String arch = ((String) systemProperties.get("os.name")).toLowerCase(Locale.ENGLISH);
-        if (arch.contains("linux")) {
-            return Platform.LINUX;
-        } else if (arch.contains("mac os x") || arch.contains("darwin") || arch.contains("osx")) {
-            return Platform.MAC_OS;
-        } else if (arch.contains("windows")) {
-            return Platform.WINDOWS;
+    static Platform detect(@Nonnull final Map<Object, Object> systemProperties) throws ToolDetectionException {
+        final String os = detectOs((String) systemProperties.get("os.name"));
+        final String arch = detectArch((String) systemProperties.get("os.arch"));
+
+        final String id = os + "_" + arch;
+        for (Platform platform : Platform.values()) {
+            if (platform.id.equals(id)) {
+                return platform;
+            }
+        }
+        throw new ToolDetectionException(id + " is not a supported platform");
+    }
+
+    private static String detectOs(final String osName) throws ToolDetectionException {
+        final String os = String.valueOf(osName).toLowerCase(Locale.ENGLISH);
+        if (os.contains("linux")) {
+            return "linux";
+        } else if (os.contains("mac os x") || os.contains("darwin") || os.contains("osx")) {
+            return "darwin";
+        } else if (os.contains("windows")) {
+            return "windows";
+        }
+        throw new ToolDetectionException(os + " is not supported OS type");
+    }
+
+    private static String detectArch(final String osArch) throws ToolDetectionException {
+        final String arch = String.valueOf(osArch).toLowerCase(Locale.ENGLISH);
+        switch (arch) {
+            case "amd64":
+            case "x86_64":
+            case "x64":
+                return "x64";
+            case "aarch64":
+            case "arm64":
+                return "arm64";
+            case "arm":
+            case "armv6l":
+            case "armv7l":
+                return "armv6";
+            default:
+                throw new ToolDetectionException(arch + " is not supported CPU type");
         }
-        throw new ToolDetectionException(arch + " is not supported CPU type");
     }
-}
\ No newline at end of file
+}
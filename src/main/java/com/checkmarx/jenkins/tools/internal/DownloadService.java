@@ -1,14 +1,25 @@
 package com.checkmarx.jenkins.tools.internal;
 
 import com.checkmarx.jenkins.tools.Platform;
+import hudson.Util;
+import net.sf.json.JSONArray;
 import net.sf.json.JSONObject;
 import org.apache.commons.io.IOUtils;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
 import java.net.URL;
+import java.net.URLConnection;
 import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
 
+import static hudson.Util.fixEmptyAndTrim;
 import static java.lang.String.format;
 
 public class DownloadService {
@@ -16,31 +27,169 @@ public class DownloadService {
     private static final String CHECKMARX_FILE_NAME = "ast-cli";
     private static final String CHECKMARX_CLI_REPO = "https://api.github.com/repos/CheckmarxDev/ast-cli";
     private static final String CHECKMARX_CLI_RELEASES_LATEST = CHECKMARX_CLI_REPO + "/releases/latest";
-    private static final String CHECKMARX_RELEASES_TAGS = CHECKMARX_CLI_REPO +  "/releases/tags/%s";
+    private static final String CHECKMARX_CLI_RELEASES_TAGS = CHECKMARX_CLI_REPO + "/releases/tags/";
     private static final String CHECKMARX_DOWNLOAD = "https://github.com/CheckmarxDev/ast-cli/releases/download/%s/%s";
+    private static final String MIRROR_RELEASE_INDEX = "releases.json";
+    private static final String LATEST = "latest";
+    private static final Map<String, Snapshot> SNAPSHOTS = new HashMap<>();
 
     private DownloadService() {
         // squid:S1118
     }
 
-    public static URL getDownloadUrlForCli(@Nonnull final String version, @Nonnull final Platform platform) throws IOException {
-        final String jsonString = DownloadService.loadJSON("latest".equals(version) ?
-                DownloadService.CHECKMARX_CLI_RELEASES_LATEST :
-                format(DownloadService.CHECKMARX_RELEASES_TAGS, version));
+    /**
+     * Resolves the configured version into a concrete tag, checking that a pinned version exists on GitHub or in
+     * the mirror. The outcome is kept per source and version until it is older than the given age, so that every
+     * node installing within that interval gets the same tag for "latest" without asking the source again.
+     */
+    @Nonnull
+    public static String resolveVersion(@Nonnull final String version, @CheckForNull final String mirror, final long maxAgeMillis,
+                                        final int connectTimeoutMillis, final int readTimeoutMillis) throws IOException {
+        final String source = fixEmptyAndTrim(mirror) == null ? CHECKMARX_CLI_REPO : mirror.trim();
+        final String key = source + "@" + version;
+        final Snapshot snapshot = getSnapshot(key, maxAgeMillis);
+        if (snapshot != null) {
+            return snapshot.tagName;
+        }
 
-        final JSONObject release = JSONObject.fromObject(jsonString);
-        final String tagName = (String) release.get("tag_name");
+        final long now = System.currentTimeMillis();
+        final String tagName = LATEST.equals(version)
+                ? resolveLatest(source, connectTimeoutMillis, readTimeoutMillis)
+                : checkTag(source, version, connectTimeoutMillis, readTimeoutMillis);
 
-        String url = format(CHECKMARX_DOWNLOAD, tagName, buildFileName(tagName, platform));
-        return new URL(url);
+        synchronized (SNAPSHOTS) {
+            // another node may have resolved it meanwhile, stick to its tag
+            final Snapshot resolved = getSnapshot(key, maxAgeMillis);
+            if (resolved != null) {
+                return resolved.tagName;
+            }
+            SNAPSHOTS.put(key, new Snapshot(tagName, now));
+            return tagName;
+        }
+    }
+
+    private static String resolveLatest(final String source, final int connectTimeoutMillis, final int readTimeoutMillis) throws IOException {
+        final String tagName = CHECKMARX_CLI_REPO.equals(source)
+                ? JSONObject.fromObject(loadJSON(new URL(CHECKMARX_CLI_RELEASES_LATEST), connectTimeoutMillis, readTimeoutMillis)).optString("tag_name", null)
+                : loadMirrorIndex(getMirrorBaseUrl(source), connectTimeoutMillis, readTimeoutMillis).optString(LATEST, null);
+        if (tagName == null) {
+            throw new IOException(format("Could not resolve the latest version from <%s>", source));
+        }
+        return tagName;
+    }
+
+    private static String checkTag(final String source, final String tagName, final int connectTimeoutMillis, final int readTimeoutMillis) throws IOException {
+        boolean exists = true;
+        if (CHECKMARX_CLI_REPO.equals(source)) {
+            try {
+                loadJSON(new URL(CHECKMARX_CLI_RELEASES_TAGS + Util.rawEncode(tagName)), connectTimeoutMillis, readTimeoutMillis);
+            } catch (FileNotFoundException e) {
+                exists = false;
+            }
+        } else {
+            exists = findRelease(loadMirrorIndex(getMirrorBaseUrl(source), connectTimeoutMillis, readTimeoutMillis).optJSONArray("releases"), tagName) != null;
+        }
+        if (!exists) {
+            throw new IOException(format("Version %s does not exist at <%s>", tagName, source));
+        }
+        return tagName;
+    }
+
+    @CheckForNull
+    private static Snapshot getSnapshot(final String key, final long maxAgeMillis) {
+        synchronized (SNAPSHOTS) {
+            final Snapshot snapshot = SNAPSHOTS.get(key);
+            return snapshot != null && System.currentTimeMillis() - snapshot.resolvedAt < maxAgeMillis ? snapshot : null;
+        }
+    }
+
+    /**
+     * Resolves the download URL of a CLI release, either from GitHub or, when a mirror is given, from the release
+     * index of the mirror. A mirror is a local directory, a file:// URL or an HTTP location laid out as
+     * {@code <mirror>/releases.json} and {@code <mirror>/<tag>/<asset>}.
+     */
+    public static URL getDownloadUrlForCli(@Nonnull final String tagName, @Nonnull final Platform platform, @CheckForNull final String mirror,
+                                           final int connectTimeoutMillis, final int readTimeoutMillis) throws IOException {
+        if (fixEmptyAndTrim(mirror) != null) {
+            return getMirrorDownloadUrl(tagName, platform, getMirrorBaseUrl(mirror.trim()), connectTimeoutMillis, readTimeoutMillis);
+        }
+
+        return new URL(format(CHECKMARX_DOWNLOAD, tagName, buildFileName(tagName, platform)));
+    }
+
+    /**
+     * Whether the mirror is a local directory or a file:// URL, which are only meaningful on the node that reads them.
+     */
+    public static boolean isLocalMirror(@CheckForNull final String mirror) throws MalformedURLException {
+        return fixEmptyAndTrim(mirror) != null && "file".equals(getMirrorBaseUrl(mirror.trim()).getProtocol());
     }
 
     public static String buildFileName(String tagName, Platform platform) {
         return String.format("%s_%s_%s", CHECKMARX_FILE_NAME, tagName, platform.packageExtension);
     }
 
-    private static String loadJSON(final String source) throws IOException {
-        URL sourceUrl = new URL(source);
-        return IOUtils.toString(sourceUrl, StandardCharsets.UTF_8);
+    private static URL getMirrorDownloadUrl(final String tagName, final Platform platform, final URL mirrorBaseUrl,
+                                            final int connectTimeoutMillis, final int readTimeoutMillis) throws IOException {
+        final URL indexUrl = new URL(mirrorBaseUrl, MIRROR_RELEASE_INDEX);
+        final JSONObject index = loadMirrorIndex(mirrorBaseUrl, connectTimeoutMillis, readTimeoutMillis);
+
+        final JSONObject release = findRelease(index.optJSONArray("releases"), tagName);
+        if (release == null) {
+            throw new IOException(format("Version %s is not available in the release index <%s>", tagName, indexUrl));
+        }
+
+        final String fileName = buildFileName(tagName, platform);
+        final JSONArray assets = release.optJSONArray("assets");
+        if (assets != null && !assets.contains(fileName)) {
+            throw new IOException(format("Asset %s is not available in the release index <%s>", fileName, indexUrl));
+        }
+
+        return new URL(mirrorBaseUrl, tagName + "/" + fileName);
+    }
+
+    private static JSONObject loadMirrorIndex(final URL mirrorBaseUrl, final int connectTimeoutMillis, final int readTimeoutMillis) throws IOException {
+        return JSONObject.fromObject(loadJSON(new URL(mirrorBaseUrl, MIRROR_RELEASE_INDEX), connectTimeoutMillis, readTimeoutMillis));
+    }
+
+    private static JSONObject findRelease(final JSONArray releases, final String tagName) {
+        if (releases == null) {
+            return null;
+        }
+        for (Object release : releases) {
+            if (release instanceof JSONObject && tagName.equals(((JSONObject) release).optString("tag_name"))) {
+                return (JSONObject) release;
+            }
+        }
+        return null;
+    }
+
+    private static URL getMirrorBaseUrl(final String mirror) throws MalformedURLException {
+        URL url;
+        try {
+            url = new URL(mirror);
+        } catch (MalformedURLException e) {
+            url = new File(mirror).toURI().toURL();
+        }
+        final String location = url.toExternalForm();
+        return location.endsWith("/") ? url : new URL(location + "/");
+    }
+
+    private static String loadJSON(final URL source, final int connectTimeoutMillis, final int readTimeoutMillis) throws IOException {
+        final URLConnection connection = source.openConnection();
+        connection.setConnectTimeout(connectTimeoutMillis);
+        connection.setReadTimeout(readTimeoutMillis);
+        try (InputStream in = connection.getInputStream()) {
+            return IOUtils.toString(in, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static final class Snapshot {
+        private final String tagName;
+        private final long resolvedAt;
+
+        private Snapshot(String tagName, long resolvedAt) {
+            this.tagName = tagName;
+            this.resolvedAt = resolvedAt;
+        }
     }
 }
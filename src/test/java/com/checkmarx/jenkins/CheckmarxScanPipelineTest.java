@@ -29,6 +29,24 @@ public class CheckmarxScanPipelineTest extends CheckmarxTestBase {
         jenkins.assertBuildStatus(Result.SUCCESS, workflowRun);
     }
 
+    @Test
+    public void doReturnScanResultsToPipeline() throws Exception {
+        log.info("doReturnScanResultsToPipeline");
+
+        WorkflowJob project = jenkins.createProject(WorkflowJob.class);
+        project.setDefinition(new CpsFlowDefinition("" +
+                "node {" +
+                "  writeFile file: 'test.yml', text: 'overwrite me' \n" +
+                "  def results = checkmarxASTScanner additionalOptions: '--scan-types sast', useOwnAdditionalOptions: true, useOwnServerCredentials: true, baseAuthUrl: '" + this.astBaseAuthUrl + "', checkmarxInstallation: '" + Constants.JT_LATEST + "', credentialsId: '" + Constants.JT_TOKEN_ID + "', projectName: 'successIntegrationJenkinsScan', serverUrl: '" + this.astServerUrl + "', tenantName: '" + this.astTenantName + "' \n" +
+                "  echo \"Scan ID: ${results.scanId}, findings: ${results.total}\"" +
+                "}", true));
+
+        WorkflowRun workflowRun = project.scheduleBuild2(0).waitForStart();
+        jenkins.waitForCompletion(workflowRun);
+        jenkins.assertBuildStatus(Result.SUCCESS, workflowRun);
+        jenkins.assertLogContains("Scan ID: " + workflowRun.getAction(CheckmarxScanResultsAction.class).getScanId(), workflowRun);
+    }
+
     @Test
     public void doFailWhenUseOwnServerCredentialButNotConfigured() throws Exception {
         log.info("doFailWhenUseOwnServerCredentialButNotConfigured");
@@ -0,0 +1,160 @@
+package com.checkmarx.jenkins;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class InFlightScansTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    private final CxLoggerAdapter log = new CxLoggerAdapter(new PrintStream(output, true));
+    private final CountDownLatch ownerStarted = new CountDownLatch(1);
+    private final CountDownLatch ownerReleased = new CountDownLatch(1);
+    private final AtomicInteger followerScans = new AtomicInteger();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void submitOrJoin_shouldShareScanId_ofRunningScan() throws Exception {
+        final Future<String> owner = submit("join", owner(() -> "owner-scan"));
+        final Future<String> follower = joinRunningScan("join");
+
+        ownerReleased.countDown();
+
+        assertEquals("owner-scan", owner.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals("owner-scan", follower.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(0, followerScans.get());
+
+        assertEquals("follower-scan", InFlightScans.submitOrJoin("join", log, this::followerScan));
+        assertEquals(1, followerScans.get());
+    }
+
+    @Test
+    public void submitOrJoin_shouldRunOwnScan_whenRunningScanFails() throws Exception {
+        final Future<String> owner = submit("failure", owner(() -> {
+            throw new IOException("Could not create the scan");
+        }));
+        final Future<String> follower = joinRunningScan("failure");
+
+        ownerReleased.countDown();
+
+        final ExecutionException e = assertThrows(ExecutionException.class, () -> owner.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof IOException);
+        assertEquals("follower-scan", follower.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(1, followerScans.get());
+    }
+
+    @Test
+    public void submitOrJoin_shouldRunOwnScan_whenRunningScanIsAborted() throws Exception {
+        final Future<String> owner = submit("abort", owner(() -> {
+            throw new InterruptedException();
+        }));
+        final Future<String> follower = joinRunningScan("abort");
+
+        ownerReleased.countDown();
+
+        final ExecutionException e = assertThrows(ExecutionException.class, () -> owner.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof InterruptedException);
+        assertEquals("follower-scan", follower.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(1, followerScans.get());
+    }
+
+    @Test
+    public void submitOrJoin_shouldRunOwnScan_whenRunningScanTimesOut() throws Exception {
+        final Future<String> owner = submit("timeout", owner(() -> "owner-scan"));
+        assertTrue(ownerStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        assertEquals("follower-scan", InFlightScans.submitOrJoin("timeout", log, this::followerScan, 10));
+        assertEquals(1, followerScans.get());
+
+        ownerReleased.countDown();
+        assertEquals("owner-scan", owner.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void submitOrJoin_shouldStopWaiting_whenInterrupted() throws Exception {
+        final Future<String> owner = submit("interrupt", owner(() -> "owner-scan"));
+        assertTrue(ownerStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final Thread follower = new Thread(() -> {
+            try {
+                InFlightScans.submitOrJoin("interrupt", log, this::followerScan);
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+        follower.start();
+        awaitOutput("already running");
+
+        follower.interrupt();
+        follower.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+
+        assertFalse(follower.isAlive());
+        assertTrue(failure.get() instanceof InterruptedException);
+        assertEquals(0, followerScans.get());
+        ownerReleased.countDown();
+        assertEquals("owner-scan", owner.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    private Future<String> submit(final String key, final Callable<String> scan) {
+        return executor.submit(() -> InFlightScans.submitOrJoin(key, log, scan));
+    }
+
+    /**
+     * Scan that runs until the test releases it.
+     */
+    private Callable<String> owner(final Callable<String> result) {
+        return () -> {
+            ownerStarted.countDown();
+            assertTrue(ownerReleased.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            return result.call();
+        };
+    }
+
+    private String followerScan() {
+        followerScans.incrementAndGet();
+        return "follower-scan";
+    }
+
+    /**
+     * Submits an identical scan once the owner runs and waits until it joined the running scan.
+     */
+    private Future<String> joinRunningScan(final String key) throws InterruptedException {
+        assertTrue(ownerStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        final Future<String> follower = submit(key, this::followerScan);
+        awaitOutput("already running");
+        return follower;
+    }
+
+    private void awaitOutput(final String text) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (!new String(output.toByteArray(), UTF_8).contains(text)) {
+            assertTrue("The scan did not join the running scan", System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
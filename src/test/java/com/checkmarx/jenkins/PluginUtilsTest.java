@@ -0,0 +1,30 @@
+package com.checkmarx.jenkins;
+
+import hudson.AbortException;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+public class PluginUtilsTest {
+
+    @Test
+    public void parseScanId_shouldReadLastLineOfOutput() throws AbortException {
+        final String output = "Scanning sources\n{\"ID\":\"not-this-one\"}\nScan status: Completed\n{\"ID\":\"6f1c1f5e\",\"Status\":\"Completed\"}\n\n";
+
+        assertEquals("6f1c1f5e", PluginUtils.parseScanId(output));
+    }
+
+    @Test
+    public void parseScanId_shouldFail_whenLastLineIsNotJson() {
+        final AbortException e = assertThrows(AbortException.class,
+                () -> PluginUtils.parseScanId("{\"ID\":\"6f1c1f5e\"}\nError: could not upload the sources\n"));
+
+        assertEquals("The CLI did not print the scan information as JSON, its last line of output was: Error: could not upload the sources", e.getMessage());
+    }
+
+    @Test
+    public void parseScanId_shouldFail_withoutScanId() {
+        assertThrows(AbortException.class, () -> PluginUtils.parseScanId("{\"Status\":\"Completed\"}"));
+    }
+}
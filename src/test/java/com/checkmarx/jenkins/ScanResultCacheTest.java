@@ -0,0 +1,80 @@
+package com.checkmarx.jenkins;
+
+import hudson.XmlFile;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ScanResultCacheTest {
+
+    private static final long MAX_AGE = TimeUnit.DAYS.toMillis(7);
+    private static final long NOW = TimeUnit.DAYS.toMillis(1000);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private XmlFile file;
+
+    @Before
+    public void setUp() {
+        file = new XmlFile(new File(folder.getRoot(), ScanResultCache.class.getName() + ".xml"));
+    }
+
+    @Test
+    public void lookup_shouldReturnStoredScan_untilItExpires() {
+        final ScanResultCache cache = ScanResultCache.load(file, MAX_AGE, 10);
+        cache.store("project@commit", "scan-1", NOW);
+
+        assertEquals("scan-1", cache.lookup("project@commit", NOW + MAX_AGE - 1));
+        assertNull(cache.lookup("project@commit", NOW + MAX_AGE));
+        assertNull(cache.lookup("project@commit", NOW));
+    }
+
+    @Test
+    public void store_shouldEvictExpiredScans() {
+        final ScanResultCache cache = ScanResultCache.load(file, MAX_AGE, 10);
+        cache.store("old", "scan-1", NOW);
+        cache.store("recent", "scan-2", NOW + 1);
+
+        cache.store("new", "scan-3", NOW + MAX_AGE);
+
+        final ScanResultCache reloaded = ScanResultCache.load(file, MAX_AGE, 10);
+        assertNull(reloaded.lookup("old", NOW + 1));
+        assertEquals("scan-2", reloaded.lookup("recent", NOW + 1));
+        assertEquals("scan-3", reloaded.lookup("new", NOW + 1));
+    }
+
+    @Test
+    public void store_shouldEvictOldestScans_whenFull() {
+        final ScanResultCache cache = ScanResultCache.load(file, MAX_AGE, 2);
+        cache.store("first", "scan-1", NOW);
+        cache.store("second", "scan-2", NOW + 1);
+        cache.store("first", "scan-3", NOW + 2);
+
+        cache.store("third", "scan-4", NOW + 3);
+
+        assertNull(cache.lookup("second", NOW + 3));
+        assertEquals("scan-3", cache.lookup("first", NOW + 3));
+        assertEquals("scan-4", cache.lookup("third", NOW + 3));
+    }
+
+    @Test
+    public void load_shouldRestoreSavedScans() {
+        final ScanResultCache cache = ScanResultCache.load(file, MAX_AGE, 10);
+        cache.store("first", "scan-1", NOW);
+        cache.store("second", "scan-2", NOW);
+        cache.remove("first");
+
+        final ScanResultCache reloaded = ScanResultCache.load(file, MAX_AGE, 10);
+
+        assertNull(reloaded.lookup("first", NOW));
+        assertEquals("scan-2", reloaded.lookup("second", NOW));
+    }
+}
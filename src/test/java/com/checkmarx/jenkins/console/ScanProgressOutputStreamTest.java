@@ -0,0 +1,40 @@
+package com.checkmarx.jenkins.console;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ScanProgressOutputStreamTest {
+
+    @Test
+    public void parseProgress_shouldRecognizeUploadedSources() {
+        assertEquals("sources uploaded", ScanProgressOutputStream.parseProgress("Uploading sources... done"));
+        assertEquals("sources uploaded", ScanProgressOutputStream.parseProgress("Sources uploaded to the server"));
+    }
+
+    @Test
+    public void parseProgress_shouldRecognizeQueuedScan() {
+        assertEquals("scan queued", ScanProgressOutputStream.parseProgress("Scan status: Queued"));
+    }
+
+    @Test
+    public void parseProgress_shouldRecognizeRunningScan() {
+        assertEquals("scan running", ScanProgressOutputStream.parseProgress("Scan status: Running"));
+        assertEquals("scan running, 45%", ScanProgressOutputStream.parseProgress("Scan status: Running (45%)"));
+    }
+
+    @Test
+    public void parseProgress_shouldIgnoreOtherLines() {
+        assertNull(ScanProgressOutputStream.parseProgress("Creating the scan of project jenkins"));
+        assertNull(ScanProgressOutputStream.parseProgress("Uploading sources..."));
+        assertNull(ScanProgressOutputStream.parseProgress("{\"ID\":\"1\",\"Status\":\"Completed\"}"));
+    }
+
+    @Test
+    public void parseScanId_shouldRecognizeScanIdLines() {
+        assertEquals("6f1c1f5e-4a7b-4c55-9a1e-0d1c2b3a4f5e", ScanProgressOutputStream.parseScanId("Scan ID: 6f1c1f5e-4a7b-4c55-9a1e-0d1c2b3a4f5e"));
+        assertEquals("6f1c1f5e-4a7b-4c55-9a1e-0d1c2b3a4f5e", ScanProgressOutputStream.parseScanId("{\"ID\":\"6f1c1f5e-4a7b-4c55-9a1e-0d1c2b3a4f5e\",\"Status\":\"Running\"}"));
+        assertNull(ScanProgressOutputStream.parseScanId("ProjectID: 6f1c1f5e-4a7b-4c55-9a1e-0d1c2b3a4f5e"));
+    }
+}
@@ -0,0 +1,105 @@
+package com.checkmarx.jenkins.results;
+
+import com.checkmarx.jenkins.model.FindingsDelta;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class FindingsIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void update_shouldOnlyWriteIndex_withoutBaseline() throws IOException {
+        File index = folder.newFile();
+
+        assertNull(FindingsIndex.update(results(
+                finding("sast", "1", "-100", "HIGH"),
+                finding("kics", "2", "200", "LOW")), index, null));
+
+        assertEquals(2, readIndex(index).size());
+        assertEquals("HIGH", readIndex(index).get("sast:-100"));
+    }
+
+    @Test
+    public void update_shouldClassifyFindingsAgainstBaseline() throws IOException {
+        File baseline = folder.newFile();
+        FindingsIndex.update(results(
+                finding("sast", "1", "-100", "HIGH"),
+                finding("sast", "2", "300", "MEDIUM"),
+                finding("kics", "3", "200", "LOW")), baseline, null);
+
+        FindingsDelta delta = FindingsIndex.update(results(
+                finding("sast", "4", "-100", "HIGH"),
+                finding("sast", "5", "400", "HIGH"),
+                finding("sast", "6", "400", "HIGH"),
+                finding("kics", "7", "300", "MEDIUM"),
+                "{\"type\": \"sca\", \"id\": \"CVE-1\", \"severity\": \"low\", \"data\": {\"nested\": [1, 2]}}"),
+                folder.newFile(), baseline);
+
+        assertEquals(3, delta.getNewCount());
+        assertEquals(Integer.valueOf(1), delta.getNewFindings().get("HIGH"));
+        assertEquals(2, delta.getFixedCount());
+        assertEquals(1, delta.getRecurringCount());
+        assertEquals("1 new High, 1 new Medium, 1 new Low, 2 fixed, 1 recurring", delta.getSummary());
+    }
+
+    @Test
+    public void update_shouldCountFindingsWithoutId_apart() throws IOException {
+        File baseline = folder.newFile();
+        FindingsIndex.update(results(
+                finding("sast", "1", "-100", "HIGH"),
+                "{\"type\": \"kics\", \"severity\": \"LOW\"}"), baseline, null);
+        File index = folder.newFile();
+
+        FindingsDelta delta = FindingsIndex.update(results(
+                finding("sast", "2", "-100", "HIGH"),
+                "{\"type\": \"kics\", \"severity\": \"LOW\"}",
+                "{\"type\": \"kics\", \"severity\": \"MEDIUM\"}"), index, baseline);
+
+        assertEquals(1, readIndex(index).size());
+        assertEquals(0, delta.getNewCount());
+        assertEquals(0, delta.getFixedCount());
+        assertEquals(1, delta.getRecurringCount());
+        assertEquals(2, delta.getUnidentifiedCount());
+        assertEquals("no new findings, 0 fixed, 1 recurring, 2 without ID", delta.getSummary());
+    }
+
+    private static String finding(String type, String id, String similarityId, String severity) {
+        return String.format("{\"type\": \"%s\", \"id\": \"%s\", \"similarityId\": \"%s\", \"severity\": \"%s\", \"data\": {\"nodes\": [{\"line\": 1}]}}",
+                type, id, similarityId, severity);
+    }
+
+    private static InputStream results(String... findings) {
+        String json = "{\"results\": [" + String.join(",", findings) + "], \"totalCount\": " + findings.length + ", \"scanID\": \"scan\"}";
+        return new ByteArrayInputStream(json.getBytes(UTF_8));
+    }
+
+    private static Map<String, String> readIndex(File index) throws IOException {
+        Map<String, String> findings = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(Files.newInputStream(index.toPath())), UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.lastIndexOf('\t');
+                findings.put(line.substring(0, separator), line.substring(separator + 1));
+            }
+        }
+        return findings;
+    }
+}
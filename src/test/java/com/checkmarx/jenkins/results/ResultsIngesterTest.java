@@ -0,0 +1,108 @@
+package com.checkmarx.jenkins.results;
+
+import com.checkmarx.jenkins.model.FindingsDelta;
+import com.checkmarx.jenkins.model.ResultsSummary;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+
+public class ResultsIngesterTest {
+
+    private static final int FINDINGS = 1_000_000;
+    private static final String[] SEVERITIES = {"LOW", "MEDIUM", "INFO", "LOW", "MEDIUM"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Runs in its own surefire execution with -Xmx96m, see pom.xml. The synthetic report is a few hundred MB and a
+     * million findings would not fit in that heap, so completing proves they are not retained.
+     */
+    @Test
+    public void accept_shouldKeepHeapIndependentOfResultCount() throws IOException {
+        File pages = new File(folder.getRoot(), "pages");
+        File baselineIndex = new File(folder.getRoot(), "baseline.gz");
+        // half of the findings of the baseline build are still there, the other half were fixed
+        FindingsIndex.update(new SyntheticResults(FINDINGS / 2, FINDINGS), baselineIndex, null);
+
+        ResultsSummary summary;
+        FindingsDelta delta;
+        try (ResultsIngester ingester = new ResultsIngester(pages, 15, 10_000)) {
+            delta = FindingsIndex.update(new SyntheticResults(0, FINDINGS), new File(folder.getRoot(), "index.gz"), baselineIndex, ingester);
+            summary = ingester.getSummary();
+        }
+
+        assertEquals(FINDINGS, summary.getTotal());
+        assertEquals(10, summary.getCount("HIGH"));
+        assertEquals(FINDINGS / 5 * 2 - 10, summary.getCount("LOW"));
+        assertEquals(FINDINGS / 10_000, summary.getPages());
+        assertEquals(FINDINGS / 10_000, pages.list().length);
+        assertEquals(15, summary.getTopFindings().size());
+        assertEquals("HIGH", summary.getTopFindings().get(0).getSeverity());
+        assertEquals("MEDIUM", summary.getTopFindings().get(14).getSeverity());
+        assertEquals(FINDINGS / 2, delta.getNewCount());
+        assertEquals(FINDINGS / 2, delta.getRecurringCount());
+        assertEquals(FINDINGS / 2, delta.getFixedCount());
+    }
+
+    /**
+     * Generates a JSON report with the given number of findings, numbered from the given one, without ever holding
+     * it in memory. Every 100000th finding is a high severity one.
+     */
+    private static class SyntheticResults extends InputStream {
+        private final int first;
+        private final int findings;
+        private int next;
+        private byte[] chunk = "{\"results\": [".getBytes(UTF_8);
+        private int position;
+
+        private SyntheticResults(int first, int findings) {
+            this.first = first;
+            this.findings = findings;
+        }
+
+        @Override
+        public int read() {
+            if (position == chunk.length && !nextChunk()) {
+                return -1;
+            }
+            return chunk[position++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (position == chunk.length && !nextChunk()) {
+                return -1;
+            }
+            int count = Math.min(len, chunk.length - position);
+            System.arraycopy(chunk, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        private boolean nextChunk() {
+            if (next > findings) {
+                return false;
+            }
+            if (next == findings) {
+                chunk = ("], \"totalCount\": " + findings + "}").getBytes(UTF_8);
+            } else {
+                int id = first + next;
+                String severity = id % 100_000 == 0 ? "HIGH" : SEVERITIES[id % SEVERITIES.length];
+                chunk = String.format("%s{\"type\": \"sast\", \"id\": \"%d\", \"similarityId\": \"%d\", \"severity\": \"%s\", "
+                                + "\"description\": \"Finding %d\", \"data\": {\"queryName\": \"Query\", \"nodes\": [{\"fileName\": \"/src/File%d.java\", \"line\": %d}]}}",
+                        next == 0 ? "" : ",", id, -id, severity, id, id, id % 500).getBytes(UTF_8);
+            }
+            next++;
+            position = 0;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.checkmarx.jenkins.tools;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import hudson.FilePath;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+
+public class CheckmarxInstallerDownloaderTest {
+
+    private static final byte[] CONTENT = "0123456789abcdefghij".getBytes(UTF_8);
+    private static final int TIMEOUT = 5000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Deque<Response> responses = new ConcurrentLinkedDeque<>();
+    private final List<String> ranges = new ArrayList<>();
+    private HttpServer server;
+    private File partialFile;
+    private CheckmarxInstaller.Downloader downloader;
+
+    private interface Response {
+        void send(HttpExchange exchange) throws IOException;
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/ast-cli.tar.gz", exchange -> {
+            synchronized (ranges) {
+                ranges.add(exchange.getRequestHeaders().getFirst("Range"));
+            }
+            try {
+                responses.removeFirst().send(exchange);
+            } finally {
+                exchange.close();
+            }
+        });
+        server.start();
+
+        partialFile = new File(folder.getRoot(), "ast-cli.tar.gz.part");
+        URL url = new URL("http", server.getAddress().getHostString(), server.getAddress().getPort(), "/ast-cli.tar.gz");
+        downloader = new CheckmarxInstaller.Downloader(url, new FilePath(new File(folder.getRoot(), "ast-cli.tar.gz")),
+                new FilePath(new File(folder.getRoot(), "cx")), TIMEOUT, TIMEOUT);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void download_shouldFetchWholeFile_withoutPartialFile() throws IOException {
+        responses.add(full());
+
+        assertEquals(CONTENT.length, downloader.downloadWithRetries(partialFile));
+
+        assertArrayEquals(CONTENT, FileUtils.readFileToByteArray(partialFile));
+        assertNull(ranges.get(0));
+    }
+
+    @Test
+    public void download_shouldAppendRemainder_onPartialContent() throws IOException {
+        FileUtils.writeByteArrayToFile(partialFile, Arrays.copyOf(CONTENT, 8));
+        responses.add(partial(8, "bytes 8-19/20"));
+
+        assertEquals(CONTENT.length - 8, downloader.downloadWithRetries(partialFile));
+
+        assertArrayEquals(CONTENT, FileUtils.readFileToByteArray(partialFile));
+        assertEquals("bytes=8-", ranges.get(0));
+    }
+
+    @Test
+    public void download_shouldStartOver_whenServerIgnoresRange() throws IOException {
+        FileUtils.writeByteArrayToFile(partialFile, Arrays.copyOf(CONTENT, 8));
+        responses.add(full());
+
+        assertEquals(CONTENT.length, downloader.downloadWithRetries(partialFile));
+
+        assertArrayEquals(CONTENT, FileUtils.readFileToByteArray(partialFile));
+    }
+
+    @Test
+    public void download_shouldKeepFile_whenRangeNotSatisfiable() throws IOException {
+        FileUtils.writeByteArrayToFile(partialFile, CONTENT);
+        responses.add(exchange -> exchange.sendResponseHeaders(416, -1));
+
+        assertEquals(0, downloader.downloadWithRetries(partialFile));
+
+        assertArrayEquals(CONTENT, FileUtils.readFileToByteArray(partialFile));
+    }
+
+    @Test
+    public void download_shouldDiscardPartialFile_onContentRangeMismatch() throws IOException {
+        FileUtils.writeByteArrayToFile(partialFile, Arrays.copyOf(CONTENT, 8));
+        responses.add(partial(4, "bytes 4-19/20"));
+
+        assertThrows(IOException.class, () -> downloader.download(partialFile));
+
+        assertFalse(partialFile.exists());
+    }
+
+    @Test
+    public void downloadWithRetries_shouldResumeInterruptedAttempts() throws IOException {
+        responses.add(truncated(6));
+        responses.add(exchange -> exchange.sendResponseHeaders(503, -1));
+        responses.add(partial(6, "bytes 6-19/20"));
+
+        assertEquals(CONTENT.length, downloader.downloadWithRetries(partialFile));
+
+        assertArrayEquals(CONTENT, FileUtils.readFileToByteArray(partialFile));
+        assertEquals(Arrays.asList(null, "bytes=6-", "bytes=6-"), ranges);
+    }
+
+    @Test
+    public void downloadWithRetries_shouldGiveUp_afterThreeAttempts() throws IOException {
+        responses.add(truncated(4));
+        responses.add(exchange -> exchange.sendResponseHeaders(503, -1));
+        responses.add(exchange -> exchange.sendResponseHeaders(503, -1));
+        responses.add(full());
+
+        assertThrows(IOException.class, () -> downloader.downloadWithRetries(partialFile));
+
+        assertEquals(3, ranges.size());
+        assertEquals(4, partialFile.length());
+    }
+
+    private static Response full() {
+        return exchange -> {
+            exchange.sendResponseHeaders(200, CONTENT.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(CONTENT);
+            }
+        };
+    }
+
+    private static Response partial(int offset, String contentRange) {
+        return exchange -> {
+            exchange.getResponseHeaders().add("Content-Range", contentRange);
+            exchange.sendResponseHeaders(206, CONTENT.length - offset);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(CONTENT, offset, CONTENT.length - offset);
+            }
+        };
+    }
+
+    /**
+     * Announces the whole file but sends only its first bytes before dropping the connection.
+     */
+    private static Response truncated(int length) {
+        return exchange -> {
+            exchange.sendResponseHeaders(200, CONTENT.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(CONTENT, 0, length);
+            out.flush();
+        };
+    }
+}
@@ -0,0 +1,41 @@
+package com.checkmarx.jenkins.tools;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+public class PlatformTest {
+
+    @Test
+    public void detect_shouldSelectX64Packages_onIntelAgents() throws Exception {
+        assertEquals(Platform.LINUX, Platform.detect(properties("Linux", "amd64")));
+        assertEquals(Platform.MAC_OS, Platform.detect(properties("Mac OS X", "x86_64")));
+        assertEquals(Platform.WINDOWS, Platform.detect(properties("Windows Server 2019", "amd64")));
+    }
+
+    @Test
+    public void detect_shouldSelectNativePackages_onArmAgents() throws Exception {
+        assertEquals(Platform.LINUX_ARM64, Platform.detect(properties("Linux", "aarch64")));
+        assertEquals(Platform.LINUX_ARMV6, Platform.detect(properties("Linux", "arm")));
+        assertEquals(Platform.MAC_OS_ARM64, Platform.detect(properties("Mac OS X", "aarch64")));
+        assertEquals("linux_arm64.tar.gz", Platform.LINUX_ARM64.packageExtension);
+    }
+
+    @Test
+    public void detect_shouldFail_onUnsupportedPlatforms() {
+        assertThrows(ToolDetectionException.class, () -> Platform.detect(properties("Windows 10", "aarch64")));
+        assertThrows(ToolDetectionException.class, () -> Platform.detect(properties("Linux", "s390x")));
+        assertThrows(ToolDetectionException.class, () -> Platform.detect(properties("SunOS", "amd64")));
+    }
+
+    private static Map<Object, Object> properties(String osName, String osArch) {
+        Map<Object, Object> properties = new HashMap<>();
+        properties.put("os.name", osName);
+        properties.put("os.arch", osArch);
+        return properties;
+    }
+}
@@ -0,0 +1,95 @@
+package com.checkmarx.jenkins.tools.internal;
+
+import com.checkmarx.jenkins.tools.Platform;
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class DownloadServiceTest {
+
+    private static final int TIMEOUT = (int) TimeUnit.SECONDS.toMillis(10);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File mirror;
+
+    @Before
+    public void setUp() throws IOException {
+        mirror = folder.newFolder("mirror");
+        FileUtils.write(new File(mirror, "releases.json"), "{" +
+                "\"latest\": \"2.0.10\"," +
+                "\"releases\": [" +
+                "  {\"tag_name\": \"2.0.9\"}," +
+                "  {\"tag_name\": \"2.0.10\", \"assets\": [\"ast-cli_2.0.10_linux_x64.tar.gz\"]}" +
+                "]}", UTF_8);
+    }
+
+    @Test
+    public void getDownloadUrlForCli_shouldResolveLatestFromMirrorIndex() throws IOException {
+        String tagName = DownloadService.resolveVersion("latest", mirror.getAbsolutePath(), 0, TIMEOUT, TIMEOUT);
+        URL url = DownloadService.getDownloadUrlForCli(tagName, Platform.LINUX, mirror.getAbsolutePath(), TIMEOUT, TIMEOUT);
+
+        assertEquals(new File(mirror, "2.0.10/ast-cli_2.0.10_linux_x64.tar.gz").toURI().toURL(), url);
+    }
+
+    @Test
+    public void resolveVersion_shouldKeepLatestSnapshotWithinInterval() throws IOException {
+        long interval = TimeUnit.HOURS.toMillis(1);
+        assertEquals("2.0.10", DownloadService.resolveVersion("latest", mirror.getAbsolutePath(), interval, TIMEOUT, TIMEOUT));
+        assertEquals("2.0.9", DownloadService.resolveVersion("2.0.9", mirror.getAbsolutePath(), interval, TIMEOUT, TIMEOUT));
+
+        FileUtils.write(new File(mirror, "releases.json"), "{\"latest\": \"2.0.11\", \"releases\": []}", UTF_8);
+
+        assertEquals("2.0.10", DownloadService.resolveVersion("latest", mirror.getAbsolutePath(), interval, TIMEOUT, TIMEOUT));
+        assertEquals("2.0.9", DownloadService.resolveVersion("2.0.9", mirror.getAbsolutePath(), interval, TIMEOUT, TIMEOUT));
+        assertEquals("2.0.11", DownloadService.resolveVersion("latest", mirror.getAbsolutePath(), 0, TIMEOUT, TIMEOUT));
+        assertThrows(IOException.class, () -> DownloadService.resolveVersion("2.0.9", mirror.getAbsolutePath(), 0, TIMEOUT, TIMEOUT));
+    }
+
+    @Test
+    public void resolveVersion_shouldFail_ifPinnedVersionIsNotMirrored() {
+        assertThrows(IOException.class, () -> DownloadService.resolveVersion("2.0.8", mirror.getAbsolutePath(), 0, TIMEOUT, TIMEOUT));
+    }
+
+    @Test
+    public void resolveVersion_shouldFail_ifLatestCannotBeResolved() {
+        File empty = new File(folder.getRoot(), "empty");
+
+        assertThrows(IOException.class, () -> DownloadService.resolveVersion("latest", empty.getAbsolutePath(), 0, TIMEOUT, TIMEOUT));
+    }
+
+    @Test
+    public void getDownloadUrlForCli_shouldAcceptFileUrlMirror() throws IOException {
+        URL url = DownloadService.getDownloadUrlForCli("2.0.9", Platform.WINDOWS, mirror.toURI().toString(), TIMEOUT, TIMEOUT);
+
+        assertEquals(new File(mirror, "2.0.9/ast-cli_2.0.9_windows_x64.zip").toURI().toURL(), url);
+    }
+
+    @Test
+    public void getDownloadUrlForCli_shouldFail_ifVersionOrAssetNotMirrored() {
+        assertThrows(IOException.class, () -> DownloadService.getDownloadUrlForCli("2.0.8", Platform.LINUX, mirror.getAbsolutePath(), TIMEOUT, TIMEOUT));
+        assertThrows(IOException.class, () -> DownloadService.getDownloadUrlForCli("2.0.10", Platform.LINUX_ARM64, mirror.getAbsolutePath(), TIMEOUT, TIMEOUT));
+    }
+
+    @Test
+    public void isLocalMirror_shouldOnlyAcceptDirectoriesAndFileUrls() throws IOException {
+        assertTrue(DownloadService.isLocalMirror(mirror.getAbsolutePath()));
+        assertTrue(DownloadService.isLocalMirror(mirror.toURI().toString()));
+        assertFalse(DownloadService.isLocalMirror("https://artifacts.example.com/ast-cli"));
+        assertFalse(DownloadService.isLocalMirror(null));
+    }
+}